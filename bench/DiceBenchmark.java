@@ -0,0 +1,388 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import jmh.DiceJmh;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* The DiceBenchmark class will:
+ * ------------------------
+ * - Time the hot paths of the program (rolling, the history, the summary, and exporting) with JMH, without needing the JavaFX window
+ * - Print the time per operation of each benchmark, and optionally save them or compare them against a saved baseline
+ *
+ * The benchmarks are registered here and measured by jmh.DiceJmh, which runs each one in its own JVM after warming it up.
+ * JMH cannot generate benchmarks for classes in the default package, so DiceJmh looks the work up by name (see work).
+ * Registering a benchmark only records its name and operations, its history and files are only made when its work is built,
+ * so listing the benchmarks costs nothing and each JMH fork only builds the one it measures.
+ * Every benchmark returns a checksum that JMH keeps, so the JIT cannot throw the measured work away.
+ *
+ * Usage:
+ * ------------------------
+ * mvn test-compile exec:exec@benchmark -Dbenchmark.args="[--filter text] [--iterations n] [--save file] [--baseline file] [--tolerance percent]"
+ * - --filter: only runs benchmarks whose name contains the text.
+ * - --save: writes "name,nanoseconds per operation" lines, to be used as a baseline later.
+ * - --baseline: compares against a saved file and exits with status 1 if any benchmark is slower by more than the tolerance (default 15%).
+ *
+ * Methods:
+ * ------------------------
+ * - main: reads the arguments, runs the benchmarks with JMH, and reports the results.
+ * - work: builds the work of one benchmark by name, for DiceJmh.
+ * - register: adds every benchmark (name, operations per call, and how to build the work to time).
+ * - compare: checks the results against a baseline, returning true if nothing has regressed.
+ */
+
+public class DiceBenchmark {
+    static final int DEFAULT_ITERATIONS = 10;
+    static final double DEFAULT_TOLERANCE = 15.0;
+
+    // Sizes of the history used by the history, summary, and export benchmarks
+    static final int[] HISTORY_SIZES = {1_000, 100_000, 1_000_000};
+
+    // Builds the work of a benchmark (rolling its history, and so on), only once the benchmark is about to be measured
+    private interface Workload {
+        Callable<Long> build(Path tempDirectory) throws Exception;
+    }
+
+    // One benchmark: its work returns a checksum after doing operations units of work
+    private static final class Benchmark {
+        final String name;
+        final long operations;
+        final Workload workload;
+
+        Benchmark(String name, long operations, Workload workload) {
+            this.name = name;
+            this.operations = operations;
+            this.workload = workload;
+
+        }
+    }
+
+    private final List<Benchmark> benchmarks = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        String filter = "";
+        int iterations = DEFAULT_ITERATIONS;
+        Path save = null;
+        Path baseline = null;
+        double tolerance = DEFAULT_TOLERANCE;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--filter":
+                    filter = args[++i];
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--save":
+                    save = Paths.get(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        // only the names and operations are needed here, the work itself is built and run by DiceJmh in the JMH forks
+        DiceBenchmark benchmark = new DiceBenchmark();
+        benchmark.register();
+        List<String> names = new ArrayList<>();
+        Map<String, Long> operations = new HashMap<>();
+
+        for (Benchmark b : benchmark.benchmarks) {
+            if (b.name.contains(filter)) {
+                names.add(b.name);
+                operations.put(b.name, b.operations);
+
+            }
+        }
+
+        if (names.isEmpty()) {
+            System.err.println("No benchmark matches " + filter);
+            System.exit(2);
+
+        }
+
+        Map<String, RunResult> runs = new HashMap<>();
+
+        for (RunResult run : new Runner(new OptionsBuilder()
+                .include(DiceJmh.class.getName())
+                .param("name", names.toArray(new String[0]))
+                .measurementIterations(iterations)
+                .build()).run()) {
+            runs.put(run.getParams().getParam("name"), run);
+
+        }
+
+        // JMH times a whole call, which is turned back into the time per operation
+        Map<String, Double> results = new LinkedHashMap<>();
+
+        for (String name : names) {
+            double calls = operations.get(name);
+            double nanos = runs.get(name).getPrimaryResult().getScore() / calls;
+            double error = runs.get(name).getPrimaryResult().getScoreError() / calls;
+            System.out.println(String.format(Locale.ROOT, "%-32s %14.3f ns/op  +- %.3f", name, nanos, error));
+            results.put(name, nanos);
+
+        }
+
+        if (save != null) {
+            StringBuilder lines = new StringBuilder();
+
+            for (Map.Entry<String, Double> result : results.entrySet()) {
+                lines.append(result.getKey()).append(',').append(String.format(Locale.ROOT, "%.3f", result.getValue())).append('\n');
+
+            }
+
+            Files.write(save, lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        }
+
+        if (baseline != null && !compare(results, baseline, tolerance)) {
+            System.exit(1);
+
+        }
+    }
+
+    // Method will build the work of the named benchmark, writing exports to tempDirectory, or return null if there is no such benchmark
+    public static Callable<Long> work(String name, Path tempDirectory) throws Exception {
+        DiceBenchmark benchmark = new DiceBenchmark();
+        benchmark.register();
+
+        for (Benchmark b : benchmark.benchmarks) {
+            if (b.name.equals(name)) {
+                return b.workload.build(tempDirectory);
+
+            }
+        }
+
+        return null;
+    }
+
+    // Method will add every benchmark. Nothing is rolled or written until a benchmark's work is built.
+    void register() {
+        // newVal across the kinds of range, each call rolls 1024 values
+        Map<String, RollSpec> specs = new LinkedHashMap<>();
+        specs.put("plain", RollSpec.of(1, 6, false, false, 1));
+        specs.put("ignoreEven", RollSpec.of(1, 6, true, false, 1));
+        specs.put("ignoreOdd", RollSpec.of(1, 6, false, true, 1));
+        specs.put("negative", RollSpec.of(-1000, -3, false, false, 1));
+        specs.put("fullRange", RollSpec.of(Integer.MIN_VALUE, Integer.MAX_VALUE, false, false, 1));
+
+        for (Map.Entry<String, RollSpec> spec : specs.entrySet()) {
+            RollSpec rollSpec = spec.getValue();
+
+            add("newVal." + spec.getKey(), 1024, tempDirectory -> {
+                RollRandom random = RandomSource.SPLITTABLE.create(42);
+
+                return () -> {
+                    long sum = 0;
+
+                    for (int i = 0; i < 1024; i++) {
+                        sum += RollEngine.newVal(random, rollSpec);
+
+                    }
+
+                    return sum;
+                };
+            });
+        }
+
+        // newVal with each generator, and with Math.random for comparison
+        for (RandomSource source : RandomSource.values()) {
+            RollSpec rollSpec = specs.get("plain");
+
+            add("newVal.source." + source.name().toLowerCase(Locale.ROOT), 1024, tempDirectory -> {
+                RollRandom random = source.create(42);
+
+                return () -> {
+                    long sum = 0;
+
+                    for (int i = 0; i < 1024; i++) {
+                        sum += RollEngine.newVal(random, rollSpec);
+
+                    }
+
+                    return sum;
+                };
+            });
+        }
+
+        add("newVal.source.mathRandom", 1024, tempDirectory -> () -> {
+            long sum = 0;
+
+            for (int i = 0; i < 1024; i++) {
+                sum += (long) (Math.random() * 6) + 1;
+
+            }
+
+            return sum;
+        });
+
+        // a whole Roll click, from 1 to 100 dice
+        for (int dice : new int[] {1, 10, 100}) {
+            RollSpec rollSpec = RollSpec.of(1, 6, false, false, dice);
+
+            add("roll." + dice + "dice", dice, tempDirectory -> {
+                RollEngine rollEngine = new RollEngine();
+                return () -> rollEngine.roll(rollSpec).getSum();
+
+            });
+        }
+
+        // a batch large enough to be rolled in parallel
+        RollSpec parallelSpec = RollSpec.of(1, 20, false, false, RollEngine.PARALLEL_THRESHOLD);
+
+        add("roll.parallel", RollEngine.PARALLEL_THRESHOLD, tempDirectory -> {
+            RollEngine rollEngine = new RollEngine();
+            return () -> rollEngine.roll(parallelSpec).getSum();
+
+        });
+
+        add("expression.4d6kh3", 1, tempDirectory -> {
+            DiceExpression expression = DiceExpression.compile("4d6kh3+2");
+            return () -> (long) expression.evaluate();
+
+        });
+
+        for (int size : HISTORY_SIZES) {
+            // appending one at a time, as a single roll does, and as whole batches
+            add("history.append." + size, size, tempDirectory -> {
+                int[] values = rolls(size);
+
+                return () -> {
+                    RollHistory history = new RollHistory();
+
+                    for (int value : values) {
+                        history.append(value);
+
+                    }
+
+                    return (long) history.size();
+                };
+            });
+
+            add("history.appendAll." + size, size, tempDirectory -> {
+                int[] values = rolls(size);
+
+                return () -> {
+                    RollHistory history = new RollHistory();
+                    history.appendAll(values);
+                    return (long) history.size();
+                };
+            });
+
+            // reading every roll back in order, which unpacks the full chunks
+            add("history.forEachChunk." + size, size, tempDirectory -> {
+                RollHistory filled = filled(size);
+
+                return () -> {
+                    long[] sum = new long[1];
+                    filled.forEachChunk((chunk, length) -> {
+                        for (int i = 0; i < length; i++) {
+                            sum[0] += chunk[i];
+
+                        }
+                    });
+                    return sum[0];
+                };
+            });
+
+            // the summary shown under the past results, worked out from scratch each time
+            add("summary." + size, size, tempDirectory -> {
+                int[] values = rolls(size);
+
+                return () -> {
+                    RollStatistics statistics = new RollStatistics();
+                    statistics.addAll(values, 0, values.length);
+                    return (long) RollStatistics.buildSummary(statistics).length();
+                };
+            });
+
+            for (HistoryExporter.Format format : HistoryExporter.Format.values()) {
+                add("export." + format.name().toLowerCase(Locale.ROOT) + "." + size, size, tempDirectory -> {
+                    HistoryExporter exporter = new HistoryExporter();
+                    RollHistory filled = filled(size);
+                    String summary = RollStatistics.buildSummary(filled.getStatistics());
+                    Path file = tempDirectory.resolve("export." + size + format.getExtension());
+
+                    return () -> {
+                        exporter.export(format, filled, summary, file, HistoryExporter.NO_PROGRESS);
+                        return Files.size(file);
+                    };
+                });
+            }
+        }
+    }
+
+    private void add(String name, long operations, Workload workload) {
+        benchmarks.add(new Benchmark(name, operations, workload));
+
+    }
+
+    // Method will return size rolls of a d100, as used by the history, summary, and export benchmarks
+    private static int[] rolls(int size) {
+        return new RollEngine().roll(RollSpec.of(1, 100, false, false, size)).getValues();
+
+    }
+
+    private static RollHistory filled(int size) {
+        RollHistory history = new RollHistory();
+        history.appendAll(rolls(size));
+        return history;
+
+    }
+
+    // Method will compare the results against a baseline, returning false if any benchmark is slower by more than tolerance percent
+    static boolean compare(Map<String, Double> results, Path baseline, double tolerance) throws IOException {
+        boolean passed = true;
+
+        for (String line : Files.readAllLines(baseline, StandardCharsets.UTF_8)) {
+            int comma = line.lastIndexOf(',');
+
+            if (comma < 0) {
+                continue;
+
+            }
+
+            String name = line.substring(0, comma);
+            Double result = results.get(name);
+
+            if (result == null) {
+                continue;
+
+            }
+
+            double before = Double.parseDouble(line.substring(comma + 1));
+            double change = (result - before) / before * 100;
+
+            if (change > tolerance) {
+                System.out.println(String.format(Locale.ROOT, "REGRESSION %s: %.3f -> %.3f ns/op (%+.1f%%)", name, before, result, change));
+                passed = false;
+
+            }
+        }
+
+        return passed;
+    }
+}
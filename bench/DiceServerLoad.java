@@ -0,0 +1,178 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/* The DiceServerLoad class will:
+ * ------------------------
+ * - Check that a DiceServer answers /roll, /odds and /batch calls correctly, and refuses a batch that is too large
+ * - Then call it from several threads at once for a while and report the requests (and rolls) per second
+ *
+ * With no --port, a server is started inside this program on a free port, so nothing needs to be running first.
+ * Connections are kept alive between calls, as a real client would.
+ *
+ * Usage:
+ * ------------------------
+ * java DiceServerLoad [--port n] [--threads n] [--seconds n] [--count n]
+ *
+ * Methods:
+ * ------------------------
+ * - main: reads the arguments, checks the answers, runs the load, and reports the results.
+ * - call: makes one call and returns the answer, failing on anything but 200.
+ */
+
+public class DiceServerLoad {
+    public static void main(String[] args) throws Exception {
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        int seconds = 10;
+        int count = 10;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--count":
+                    count = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        DiceServer server = port < 0 ? DiceServer.start(0) : null;
+        String base = "http://localhost:" + (server != null ? server.getPort() : port);
+
+        try {
+            // check the answers before measuring anything
+            String seeded = call(base + "/roll?max=20&count=5&seed=42", null);
+            require(seeded.equals(call(base + "/roll?max=20&count=5&seed=42", null)), "the same seed gave different rolls: " + seeded);
+            require(call(base + "/roll?min=-3&max=3&ignoreOdd=true&count=1000&values=false", null).contains("\"count\":1000"), "/roll did not roll 1000 values");
+            require(call(base + "/odds?max=6&dice=2", null).contains("\"lowest\":2,\"highest\":12"), "/odds did not cover 2 to 12");
+            String batch = call(base + "/batch", "/roll?max=6&count=3\n/odds?max=4\n/roll?min=5&max=1\n");
+            require(batch.startsWith("[{\"count\":3") && batch.contains("{\"error\":"), "/batch did not answer every line: " + batch);
+            StringBuilder tooLarge = new StringBuilder();
+
+            for (int i = 0; i <= DiceServer.MAX_VALUES_PER_BATCH / DiceServer.MAX_ROLLS_PER_CALL; i++) {
+                tooLarge.append("/roll?count=").append(DiceServer.MAX_ROLLS_PER_CALL).append('\n');
+
+            }
+
+            require(status(base + "/batch", tooLarge.toString()) == 413, "a batch of too many rolls was not refused with 413");
+            require(status(base + "/odds?max=2&dice=4000000", null) == 413, "odds that take too long to work out were not refused with 413");
+            require(status(base + "/batch", "/odds?max=2&dice=4000000\n") == 413, "a batch of odds that take too long was not refused with 413");
+            require(status(base + "/batch", "/odds?max=6&dice=7000\n/odds?max=6&dice=7001\n") == 413, "a batch of too much work in all was not refused with 413");
+            System.out.println("Answers are correct");
+
+            String url = base + "/roll?max=20&count=" + count;
+            LongAdder requests = new LongAdder();
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            Thread[] clients = new Thread[threads];
+
+            for (int t = 0; t < threads; t++) {
+                clients[t] = new Thread(() -> {
+                    try {
+                        while (System.nanoTime() < end) {
+                            call(url, null);
+                            requests.increment();
+
+                        }
+
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+
+                    }
+                });
+                clients[t].start();
+
+            }
+
+            for (Thread client : clients) {
+                client.join();
+
+            }
+
+            double perSecond = requests.sum() / (double) seconds;
+            System.out.println(String.format(Locale.ROOT, "%d threads: %.0f requests/s, %.0f rolls/s", threads, perSecond, perSecond * count));
+
+        } finally {
+            if (server != null) {
+                server.stop();
+
+            }
+        }
+    }
+
+    // Method will make one GET (or POST, if there is a body) call and return the answer
+    static String call(String url, String body) throws IOException {
+        HttpURLConnection connection = open(url, body);
+
+        if (connection.getResponseCode() != 200) {
+            throw new IOException(url + " answered " + connection.getResponseCode());
+
+        }
+
+        // reading the whole answer lets the connection be kept alive for the next call
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream answer = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                answer.write(buffer, 0, read);
+
+            }
+
+            return new String(answer.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Method will make one call and return only its status
+    static int status(String url, String body) throws IOException {
+        HttpURLConnection connection = open(url, body);
+        int status = connection.getResponseCode();
+        connection.disconnect();
+
+        return status;
+    }
+
+    // Method will open a GET (or POST, sending the body) call
+    private static HttpURLConnection open(String url, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+
+        if (body != null) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+
+            }
+        }
+
+        return connection;
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+
+        }
+    }
+}
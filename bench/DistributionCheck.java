@@ -0,0 +1,160 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Locale;
+
+/* The DistributionCheck class will:
+ * ------------------------
+ * - Check the DistributionCalculator against exact counts of how many ways each total can be rolled, worked out with BigInteger
+ * - Check that a symmetric roll has the same chance at both ends, however small (ie. 100d20 rolls 100 and 2000 with a chance of 20^-100 each)
+ * - Check that a roll with too many dice is refused straight away, and that the most dice allowed are worked out within MAX_SECONDS
+ * - Exit with status 1 if any check fails, so it can gate a build (Maven runs it in the test phase). It needs no window and runs headless.
+ *
+ * Usage:
+ * ------------------------
+ * java DistributionCheck
+ *
+ * Methods:
+ * ------------------------
+ * - main: checks every roll and reports the results.
+ * - check: checks one roll against the exact counts, returns true if it passed.
+ * - checkLimits: checks that large rolls are refused or answered quickly, returns true if they were.
+ * - exactCounts: returns how many ways each total can be rolled.
+ */
+
+public class DistributionCheck {
+    // The largest relative difference allowed from the exact chance of any total
+    static final double TOLERANCE = 1e-9;
+
+    // The longest the largest allowed roll, or refusing a larger one, may take
+    static final double MAX_SECONDS = 2.0;
+
+    public static void main(String[] args) {
+        RollSpec[] specs = {
+            RollSpec.of(1, 6, false, false, 1),
+            RollSpec.of(1, 6, false, false, 3),
+            RollSpec.of(1, 20, false, false, 100),
+            RollSpec.of(1, 2, false, false, 500),
+            RollSpec.of(-7, 7, false, true, 40),
+            RollSpec.of(1, 100, true, false, 25),
+            RollSpec.of(-100, 100, false, false, 5),
+            RollSpec.of(3, 3, false, false, 10),
+        };
+
+        DistributionCalculator calculator = new DistributionCalculator();
+        int failures = 0;
+
+        for (RollSpec spec : specs) {
+            if (!check(calculator, spec)) {
+                failures++;
+
+            }
+        }
+
+        if (!checkLimits(calculator)) {
+            failures++;
+
+        }
+
+        System.out.println(failures == 0 ? "All distributions passed" : failures + " distribution(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+
+    }
+
+    // Method will compare every chance of the roll with the exact one, and both ends with each other
+    static boolean check(DistributionCalculator calculator, RollSpec spec) {
+        DistributionCalculator.Distribution distribution = calculator.distribution(spec);
+        BigInteger[] counts = exactCounts(spec);
+        BigInteger outcomes = BigInteger.valueOf(spec.getFaces()).pow(spec.getDice());
+        double worst = 0.0;
+        boolean passed = distribution.size() == counts.length;
+
+        for (int i = 0; passed && i < counts.length; i++) {
+            double exact = divide(counts[i], outcomes);
+            double error = Math.abs(distribution.getChance(i) - exact) / exact;
+            worst = Math.max(worst, error);
+
+        }
+
+        // every die is symmetric, so the lowest and highest totals are equally likely
+        long lowest = distribution.getLowest();
+        long highest = distribution.getHighest();
+        boolean symmetric = distribution.chanceOf(lowest) == distribution.chanceOf(highest);
+        passed &= worst <= TOLERANCE && symmetric;
+
+        System.out.println(String.format(Locale.ROOT, "%-4s %dd[%d..%d step %d]  P(%d) = %.6g  P(%d) = %.6g  worst error %.3g",
+                passed ? "ok" : "FAIL", spec.getDice(), spec.getFirstFace(), spec.getFirstFace() + spec.getStep() * (spec.getFaces() - 1), spec.getStep(),
+                lowest, distribution.chanceOf(lowest), highest, distribution.chanceOf(highest), worst));
+
+        return passed;
+    }
+
+    // Method will check that 4,000,000d2 is refused at once, and that the most d6 allowed are worked out quickly
+    static boolean checkLimits(DistributionCalculator calculator) {
+        boolean passed = true;
+        long start = System.nanoTime();
+
+        try {
+            calculator.distribution(RollSpec.of(1, 2, false, false, 4_000_000));
+            passed = false;
+
+        } catch (IllegalArgumentException e) {
+            // refused, as it should be
+        }
+
+        double refusedSeconds = (System.nanoTime() - start) / 1e9;
+        passed &= refusedSeconds <= MAX_SECONDS;
+
+        // the most d6 whose work is within the limit
+        int dice = 1;
+
+        while (DistributionCalculator.estimateWork(RollSpec.of(1, 6, false, false, dice + 1)) <= DistributionCalculator.MAX_WORK) {
+            dice++;
+
+        }
+
+        start = System.nanoTime();
+        DistributionCalculator.Distribution distribution = calculator.distribution(RollSpec.of(1, 6, false, false, dice));
+        double largestSeconds = (System.nanoTime() - start) / 1e9;
+        passed &= largestSeconds <= MAX_SECONDS && distribution.size() == DistributionCalculator.countTotals(RollSpec.of(1, 6, false, false, dice));
+
+        System.out.println(String.format(Locale.ROOT, "%-4s 4000000d2 refused in %.3f s, %dd6 worked out in %.3f s",
+                passed ? "ok" : "FAIL", refusedSeconds, dice, largestSeconds));
+
+        return passed;
+    }
+
+    // Method will return how many ways each total (from the lowest) can be rolled, adding one die at a time
+    static BigInteger[] exactCounts(RollSpec spec) {
+        int faces = (int) spec.getFaces();
+        BigInteger[] counts = {BigInteger.ONE};
+
+        for (int die = 0; die < spec.getDice(); die++) {
+            BigInteger[] next = new BigInteger[counts.length + faces - 1];
+            Arrays.fill(next, BigInteger.ZERO);
+
+            for (int i = 0; i < counts.length; i++) {
+                for (int face = 0; face < faces; face++) {
+                    next[i + face] = next[i + face].add(counts[i]);
+
+                }
+            }
+
+            counts = next;
+
+        }
+
+        return counts;
+    }
+
+    // Method will return count / outcomes as a double, even when both are far beyond the range of a double
+    private static double divide(BigInteger count, BigInteger outcomes) {
+        // scale the count up so the quotient has about 60 bits, then scale the answer back down
+        int shift = outcomes.bitLength() - count.bitLength() + 60;
+        return Math.scalb(count.shiftLeft(shift).divide(outcomes).doubleValue(), -shift);
+
+    }
+}
@@ -0,0 +1,175 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/* The ExportCheck class will:
+ * ------------------------
+ * - Export histories as binary files and read them back, checking that every roll comes back in order
+ * - Cover the edge cases of the bit packing: no rolls, a single value (0 bits per roll), d6 and d20 rolls, negative rolls, the full int range
+ *   (32 bits per roll), long runs of the same roll, and counts that do and do not fill the last long
+ * - Check that a packed d6 export is much smaller than the text export of the same history, and that damaged files are refused
+ * - Exit with status 1 if any check fails, so it can gate a build (Maven runs it in the test phase). It needs no window and runs headless.
+ *
+ * Usage:
+ * ------------------------
+ * java ExportCheck
+ *
+ * Methods:
+ * ------------------------
+ * - main: checks every history and reports the results.
+ * - check: exports one history, reads it back, and compares, returns true if it passed.
+ * - checkSize: compares the size of a binary export with its text export, returns true if it is small enough.
+ * - checkDamaged: checks that a file that is not an export, or is cut short, is refused, returns true if it was.
+ * - rolls: returns count random rolls from lowest to highest.
+ */
+
+public class ExportCheck {
+    // A packed d6 export must be at most this fraction of the size of the text export
+    static final double MAX_BINARY_FRACTION = 0.1;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("dice-export-check");
+        HistoryExporter exporter = new HistoryExporter();
+        int failures = 0;
+
+        // a run of the same roll between two others, so the width is set by the ends
+        int[] runs = new int[70_000];
+        Arrays.fill(runs, 1, runs.length - 1, 42);
+        runs[runs.length - 1] = 43;
+
+        Object[][] histories = {
+            {"empty", new int[0]},
+            {"single value", rolls(1000, 7, 7)},
+            {"one roll", new int[] {-5}},
+            {"d6", rolls(100_001, 1, 6)},
+            {"d20", rolls(64, 1, 20)},
+            {"d20 + 1", rolls(65, 1, 20)},
+            {"negative", rolls(12_345, -1000, -3)},
+            {"full range", rolls(50_000, Integer.MIN_VALUE, Integer.MAX_VALUE)},
+            {"int ends", new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, 0, Integer.MAX_VALUE}},
+            {"runs", runs},
+        };
+
+        try {
+            for (Object[] history : histories) {
+                if (!check(exporter, directory, (String) history[0], (int[]) history[1])) {
+                    failures++;
+
+                }
+            }
+
+            if (!checkSize(exporter, directory)) {
+                failures++;
+
+            }
+
+            if (!checkDamaged(exporter, directory)) {
+                failures++;
+
+            }
+
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+
+            }
+
+            Files.deleteIfExists(directory);
+
+        }
+
+        System.out.println(failures == 0 ? "All exports passed" : failures + " export(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+
+    }
+
+    // Method will export the rolls, read them back into a fresh history, and compare every roll
+    static boolean check(HistoryExporter exporter, Path directory, String name, int[] values) throws IOException {
+        RollHistory history = new RollHistory();
+        history.appendAll(values);
+        Path file = directory.resolve("check.dice");
+        boolean passed = exporter.exportBinary(history, file, HistoryExporter.NO_PROGRESS);
+
+        RollHistory loaded = new RollHistory();
+        exporter.importBinary(file, loaded);
+        passed &= loaded.size() == values.length;
+
+        for (int i = 0; passed && i < values.length; i++) {
+            passed = loaded.get(i) == values[i];
+
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-4s %-14s %8d rolls  %10d bytes",
+                passed ? "ok" : "FAIL", name, values.length, Files.size(file)));
+
+        return passed;
+    }
+
+    // Method will check that 100,000 d6 rolls pack to 3 bits each, far smaller than their text export
+    static boolean checkSize(HistoryExporter exporter, Path directory) throws IOException {
+        RollHistory history = new RollHistory();
+        history.appendAll(rolls(100_000, 1, 6));
+        Path binary = directory.resolve("size.dice");
+        Path text = directory.resolve("size.txt");
+        exporter.exportBinary(history, binary, HistoryExporter.NO_PROGRESS);
+        exporter.exportText(history, "", text, HistoryExporter.NO_PROGRESS);
+
+        long expected = HistoryExporter.BINARY_HEADER_SIZE + (100_000L * 3 + 63) / 64 * 8;
+        double fraction = (double) Files.size(binary) / Files.size(text);
+        boolean passed = Files.size(binary) == expected && fraction <= MAX_BINARY_FRACTION;
+
+        System.out.println(String.format(Locale.ROOT, "%-4s binary export is %d bytes, %.1f%% of the text export",
+                passed ? "ok" : "FAIL", Files.size(binary), fraction * 100));
+
+        return passed;
+    }
+
+    // Method will check that a text file and a binary export missing its last long are both refused
+    static boolean checkDamaged(HistoryExporter exporter, Path directory) throws IOException {
+        RollHistory history = new RollHistory();
+        history.appendAll(rolls(1000, 1, 6));
+        Path text = directory.resolve("damaged.txt");
+        Path binary = directory.resolve("damaged.dice");
+        exporter.exportText(history, "", text, HistoryExporter.NO_PROGRESS);
+        exporter.exportBinary(history, binary, HistoryExporter.NO_PROGRESS);
+
+        byte[] bytes = Files.readAllBytes(binary);
+        Files.write(binary, Arrays.copyOf(bytes, bytes.length - 8));
+        boolean passed = true;
+
+        for (Path file : new Path[] {text, binary}) {
+            try {
+                exporter.importBinary(file, new RollHistory());
+                passed = false;
+
+            } catch (IOException e) {
+                // refused, as it should be
+            }
+        }
+
+        System.out.println((passed ? "ok  " : "FAIL") + " damaged files refused");
+
+        return passed;
+    }
+
+    // Method will return count rolls from lowest to highest, the same ones every run
+    static int[] rolls(int count, int lowest, int highest) {
+        SplittableRandom random = new SplittableRandom(count);
+        int[] values = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            values[i] = (int) (lowest + random.nextLong((long) highest - lowest + 1));
+
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,194 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntSupplier;
+
+/* The ExpressionCheck class will:
+ * ------------------------
+ * - Check that malformed dice notation (ie. "d", "4d", "4d6kh", "4d6kh7", "1d1!") and expressions whose totals do not fit an int are refused
+ * - Check keeping, dropping, exploding, and adding up pools against dice whose faces are chosen in advance, so every total is known
+ * - Check the lowest and highest possible totals, and that the compile cache keeps the most recently used expressions
+ * - Exit with status 1 if any check fails, so it can gate a build (Maven runs it in the test phase). It needs no window and runs headless.
+ *
+ * Usage:
+ * ------------------------
+ * java ExpressionCheck
+ *
+ * Methods:
+ * ------------------------
+ * - main: runs every check and reports the results.
+ * - checkRefused: checks one expression is refused with an IllegalArgumentException, returns true if it was.
+ * - checkTotal: rolls one expression with the given faces and compares the total, returns true if it matched.
+ * - checkRange: compares the lowest and highest possible totals of one expression, returns true if they matched.
+ * - checkCache: checks the least recently used expressions leave the cache first, returns true if they did.
+ * - faces: returns a generator that rolls the given faces, in order.
+ */
+
+public class ExpressionCheck {
+    public static void main(String[] args) {
+        int failures = 0;
+
+        String[] refused = {
+            "", "d", "4d", "4d6kh", "4d6kh7", "4d6kh0", "4d6dl4", "4d6kx2", "1d1!", "1d6kh1kl1", "0d6", "1d0", "4x6", "1d6+", "+",
+            "10001d6", "99999999999d6", "1d99999999999", "2147483647+1", "10000d2147483647", "-10000d2147483647", "100d1000000!",
+        };
+
+        for (String expression : refused) {
+            failures += checkRefused(expression) ? 0 : 1;
+
+        }
+
+        // faces are listed in the order the dice are rolled, explosions straight after the die that exploded
+        failures += checkTotal("4d6", 4 + 5 + 3 + 6, 4, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("4d6kh3", 5 + 3 + 6, 1, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("4d6k3", 5 + 3 + 6, 1, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("4d6kl1", 1, 1, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("4d6kl2", 1 + 3, 1, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("4d6dl1", 5 + 3 + 6, 1, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("4d6d1", 5 + 3 + 6, 1, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("4d6dh1", 1 + 5 + 3, 1, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("2d20kh1", 17, 17, 17) ? 0 : 1;
+        failures += checkTotal("3d6!", (6 + 6 + 2) + 4 + 1, 6, 6, 2, 4, 1) ? 0 : 1;
+        failures += checkTotal("3d6!kh1", 6 + 3, 6, 3, 2, 5) ? 0 : 1;
+        failures += checkTotal("3d6kh1!", 6 + 3, 6, 3, 2, 5) ? 0 : 1;
+        failures += checkTotal("1d2!", 2 * (DiceExpression.MAX_EXPLOSIONS + 1), repeat(2, DiceExpression.MAX_EXPLOSIONS + 1)) ? 0 : 1;
+        failures += checkTotal("2d6+3-1d6", 6 + 6 + 3 - 4, 6, 6, 4) ? 0 : 1;
+        failures += checkTotal("-1d4+10", -2 + 10, 2) ? 0 : 1;
+        failures += checkTotal(" 4D6 KH3 ", 5 + 3 + 6, 1, 5, 3, 6) ? 0 : 1;
+        failures += checkTotal("d%", 100, 100) ? 0 : 1;
+        failures += checkTotal("7", 7) ? 0 : 1;
+
+        failures += checkRange("4d6kh3+2", 3 + 2, 18 + 2) ? 0 : 1;
+        failures += checkRange("-1d4", -4, -1) ? 0 : 1;
+        failures += checkRange("2d6-1d6", 2 - 6, 12 - 1) ? 0 : 1;
+        failures += checkRange("1d6!", 1, 6 * (DiceExpression.MAX_EXPLOSIONS + 1)) ? 0 : 1;
+        failures += checkRange("4d6dh3", 1, 6) ? 0 : 1;
+        failures += checkRange("10000d214748", 10000, 2147480000) ? 0 : 1;
+
+        failures += checkCache() ? 0 : 1;
+
+        System.out.println(failures == 0 ? "All expressions passed" : failures + " expression check(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+
+    }
+
+    // Method will check the expression is refused with a message (and not compiled, or refused with any other exception)
+    static boolean checkRefused(String expression) {
+        String message;
+        boolean passed;
+
+        try {
+            DiceExpression.compile(expression);
+            message = "compiled";
+            passed = false;
+
+        } catch (IllegalArgumentException e) {
+            message = e.getMessage();
+            passed = message != null && !message.isEmpty();
+
+        } catch (RuntimeException e) {
+            message = e.toString();
+            passed = false;
+
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-4s %-22s refused: %s", passed ? "ok" : "FAIL", "\"" + expression + "\"", message));
+
+        return passed;
+    }
+
+    // Method will roll the expression with the given faces, checking every face was used and the total is the expected one
+    static boolean checkTotal(String expression, int expected, int... rolled) {
+        DiceExpression compiled = DiceExpression.compile(expression);
+        int[] used = {0};
+        IntSupplier random = faces(compiled, rolled, used);
+        int total = compiled.evaluate(random);
+        boolean passed = total == expected && used[0] == rolled.length;
+
+        System.out.println(String.format(Locale.ROOT, "%-4s %-22s rolled %d, expected %d", passed ? "ok" : "FAIL", expression, total, expected));
+
+        return passed;
+    }
+
+    // Method will compare the lowest and highest possible totals of the expression with the expected ones
+    static boolean checkRange(String expression, int minimum, int maximum) {
+        DiceExpression compiled = DiceExpression.compile(expression);
+        boolean passed = compiled.getMinimum() == minimum && compiled.getMaximum() == maximum;
+
+        System.out.println(String.format(Locale.ROOT, "%-4s %-22s from %d to %d, expected %d to %d",
+                passed ? "ok" : "FAIL", expression, compiled.getMinimum(), compiled.getMaximum(), minimum, maximum));
+
+        return passed;
+    }
+
+    // Method will check an expression used again and again stays cached while more than the cache holds pass through it,
+    // and one used only once does not
+    static boolean checkCache() {
+        DiceExpression kept = DiceExpression.compile("1d6+1000000");
+        DiceExpression dropped = DiceExpression.compile("1d6+1000001");
+        boolean passed = DiceExpression.compile("1d6+1000000") == kept;
+
+        for (int i = 0; i < 3 * DiceExpression.MAX_CACHED_EXPRESSIONS; i++) {
+            DiceExpression.compile("1d6+" + i);
+
+            if (i % (DiceExpression.MAX_CACHED_EXPRESSIONS / 2) == 0) {
+                passed &= DiceExpression.compile("1d6+1000000") == kept;
+
+            }
+        }
+
+        passed &= DiceExpression.compile("1d6+1000000") == kept && DiceExpression.compile("1d6+1000001") != dropped;
+
+        System.out.println((passed ? "ok  " : "FAIL") + " the compile cache keeps the most recently used expressions");
+
+        return passed;
+    }
+
+    // Method will return a generator whose draws give each face in turn (for a die of the given faces), counting the draws in used[0]
+    static IntSupplier faces(DiceExpression expression, int[] rolled, int[] used) {
+        // every pool of an expression checked here has the same number of faces
+        long sides = sidesOf(expression.toString());
+
+        return () -> {
+            // the middle of the face's share of the 32 bit numbers, which is never rejected
+            long face = rolled[used[0]++] - 1;
+            return (int) ((face * (1L << 32) + (1L << 31)) / sides);
+
+        };
+    }
+
+    // Method will return the faces of the dice in the expression (ie. 6 for "4d6kh3+2", 100 for "d%"), 1 if it has no dice
+    private static long sidesOf(String expression) {
+        String text = expression.replaceAll("\\s+", "").toLowerCase(Locale.ROOT);
+        int d = text.indexOf('d');
+
+        if (d < 0) {
+            return 1;
+
+        }
+
+        if (text.charAt(d + 1) == '%') {
+            return 100;
+
+        }
+
+        int end = d + 1;
+
+        while (end < text.length() && Character.isDigit(text.charAt(end))) {
+            end++;
+
+        }
+
+        return Long.parseLong(text.substring(d + 1, end));
+    }
+
+    private static int[] repeat(int face, int times) {
+        int[] rolled = new int[times];
+        Arrays.fill(rolled, face);
+        return rolled;
+
+    }
+}
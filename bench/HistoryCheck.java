@@ -0,0 +1,472 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/* The HistoryCheck class will:
+ * ------------------------
+ * - Check that PackedChunk gives back every roll it packed: the full int range (32 bits per roll), a single value (0 bits), runs, and
+ *   everything in between
+ * - Check that a RollHistory keeping only some rolls in memory still reads every roll back in order, after its retention and spill change
+ *   (from one HistorySpill to another, and to a SessionStore as the program does when the session file is opened)
+ * - Check that the statistics, frequencies included, cover the whole session and not just the rolls still in memory
+ * - Compare a history against a plain array over many rounds of random appends, retention changes, and clears
+ * - Check that a session file already open, claiming more rolls than it holds, or too large to map, is refused with an IOException
+ * - Exit with status 1 if any check fails, so it can gate a build (Maven runs it in the test phase). It needs no window and runs headless.
+ *
+ * Usage:
+ * ------------------------
+ * java HistoryCheck
+ *
+ * Methods:
+ * ------------------------
+ * - main: runs every check and reports the results.
+ * - checkPacking: packs edge case chunks and reads them back, returns true if they all matched.
+ * - checkSpillOrder: changes the retention and spill part way through a history, returns true if every roll stayed in order.
+ * - checkStatistics: compares the statistics of a mostly spilled history with the rolls themselves, returns true if they matched.
+ * - checkRandom: runs random operations on a history and a plain array side by side, returns true if they always matched.
+ * - checkSessionFile: opens locked, damaged, and oversized session files, returns true if each was refused.
+ * - matches: compares a history with the first size rolls of an array.
+ */
+
+public class HistoryCheck {
+    static final int CHUNK = RollHistory.CHUNK_SIZE;
+
+    // Rounds of random operations, and the seed they start from
+    static final int ROUNDS = 400;
+    static final long SEED = 20240101;
+
+    // Every roll is compared once in this many rounds, as reading the spilled rolls back is slow
+    static final int FULL_CHECK_ROUNDS = 20;
+
+    // Every spill made, so they can be closed (and their files deleted) at the end
+    private static final List<HistorySpill> spills = new ArrayList<>();
+    private static Path directory;
+
+    public static void main(String[] args) throws IOException {
+        directory = Files.createTempDirectory("dice-history-check");
+        int failures = 0;
+
+        try {
+            failures += checkPacking() ? 0 : 1;
+            failures += checkSpillOrder() ? 0 : 1;
+            failures += checkStatistics() ? 0 : 1;
+            failures += checkRandom() ? 0 : 1;
+            failures += checkSessionFile() ? 0 : 1;
+
+        } finally {
+            for (HistorySpill spill : spills) {
+                spill.close();
+
+            }
+
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+
+            }
+
+            Files.deleteIfExists(directory);
+
+        }
+
+        System.out.println(failures == 0 ? "All history checks passed" : failures + " history check(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+
+    }
+
+    // Method will pack every edge case chunk and check each roll, and ranges of rolls, come back the same
+    static boolean checkPacking() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] fullRange = new int[CHUNK];
+        int[] ends = new int[CHUNK];
+        int[] width31 = new int[CHUNK];
+        int[] runs = new int[CHUNK];
+        int[] extremeRuns = new int[CHUNK];
+
+        for (int i = 0; i < CHUNK; i++) {
+            fullRange[i] = random.nextInt();
+            ends[i] = i % 3 == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            width31[i] = random.nextInt(Integer.MAX_VALUE);
+            runs[i] = i / 1000;
+            extremeRuns[i] = (i / 5000) % 2 == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+
+        }
+
+        Object[][] chunks = {
+            {"empty", new int[0], 0},
+            {"one roll", new int[] {Integer.MIN_VALUE}, 1},
+            {"single value", filled(CHUNK, -17), CHUNK},
+            {"d6", rolls(random, CHUNK, 1, 6), CHUNK},
+            {"full range", fullRange, CHUNK},
+            {"int ends", ends, CHUNK},
+            {"31 bits", width31, CHUNK},
+            {"runs", runs, CHUNK},
+            {"int end runs", extremeRuns, CHUNK},
+            {"part of a chunk", fullRange, 12_345},
+        };
+
+        boolean passed = PackedChunk.widthOf(Integer.MIN_VALUE, Integer.MAX_VALUE) == 32 && PackedChunk.widthOf(-17, -17) == 0
+                && PackedChunk.widthOf(1, 6) == 3 && PackedChunk.widthOf(1, 20) == 5 && PackedChunk.widthOf(0, Integer.MAX_VALUE) == 31;
+
+        for (Object[] chunk : chunks) {
+            int[] values = (int[]) chunk[1];
+            int length = (int) chunk[2];
+            PackedChunk packed = PackedChunk.pack(values, length);
+            boolean same = packed.size() == length;
+
+            for (int i = 0; same && i < length; i++) {
+                same = packed.get(i) == values[i];
+
+            }
+
+            // ranges starting and ending at every kind of position, including ones crossing words
+            for (int r = 0; same && r < 200 && length > 0; r++) {
+                int from = random.nextInt(length);
+                int len = random.nextInt(length - from + 1);
+                int[] copy = new int[len + 2];
+                packed.copyTo(from, copy, 1, len);
+                same = Arrays.equals(Arrays.copyOfRange(copy, 1, len + 1), Arrays.copyOfRange(values, from, from + len));
+
+            }
+
+            same &= throwsOutOfBounds(() -> packed.get(length)) && throwsOutOfBounds(() -> packed.get(-1));
+            passed &= same;
+
+            System.out.println(String.format(Locale.ROOT, "%-4s pack %-16s %6d rolls", same ? "ok" : "FAIL", chunk[0], length));
+
+        }
+
+        return passed;
+    }
+
+    // Method will spill to one HistorySpill, move to a second, then to a SessionStore, checking every roll after each change
+    static boolean checkSpillOrder() throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        int[] values = rolls(random, 9 * CHUNK + 321, -50, 50);
+        RollHistory history = new RollHistory();
+        HistorySpill first = newSpill();
+        history.setRetention(CHUNK, first);
+        history.appendAll(values, 0, 4 * CHUNK + 7);
+        boolean passed = matches(history, values, 4 * CHUNK + 7);
+
+        // a new spill gets every chunk already spilled, and the old one is no longer read
+        HistorySpill second = newSpill();
+        history.setRetention(2 * CHUNK, second);
+        first.close();
+        passed &= matches(history, values, 4 * CHUNK + 7);
+
+        history.appendAll(values, 4 * CHUNK + 7, 2 * CHUNK);
+        history.setRetention(1, null);
+        passed &= matches(history, values, 6 * CHUNK + 7);
+
+        // keeping every roll in memory again leaves the spilled rolls where they are
+        history.setRetention(0, null);
+        history.appendAll(values, 6 * CHUNK + 7, CHUNK);
+        passed &= matches(history, values, 7 * CHUNK + 7);
+
+        // the session holds every roll, so it takes over without copying anything
+        try (SessionStore store = SessionStore.open(directory.resolve("session.dat"))) {
+            store.append(values, 0, 7 * CHUNK + 7);
+            history.setRetention(CHUNK, store);
+            second.close();
+            passed &= matches(history, values, 7 * CHUNK + 7);
+
+            int rest = values.length - (7 * CHUNK + 7);
+            store.append(values, 7 * CHUNK + 7, rest);
+            history.appendAll(values, 7 * CHUNK + 7, rest);
+            passed &= matches(history, values, values.length);
+
+            // and a session reloaded into a fresh history reads back the same
+            RollHistory reloaded = new RollHistory();
+            reloaded.setRetention(2 * CHUNK, store);
+            store.load(reloaded);
+            passed &= matches(reloaded, values, values.length);
+
+        }
+
+        System.out.println((passed ? "ok  " : "FAIL") + " spill order kept across retention changes");
+
+        return passed;
+    }
+
+    // Method will check the statistics of a history with all but one chunk spilled against the rolls themselves
+    static boolean checkStatistics() {
+        SplittableRandom random = new SplittableRandom(SEED + 2);
+        int[] values = rolls(random, 6 * CHUNK + 99, -10, 30);
+        RollHistory history = new RollHistory();
+        history.setRetention(1, newSpill());
+
+        for (int off = 0; off < values.length; ) {
+            int len = Math.min(values.length - off, 1 + random.nextInt(CHUNK));
+            history.appendAll(values, off, len);
+            off += len;
+
+        }
+
+        boolean passed = statisticsMatch(history.getStatistics(), values, values.length);
+        history.clear();
+        passed &= history.getStatistics().isEmpty() && history.isEmpty();
+
+        System.out.println((passed ? "ok  " : "FAIL") + " statistics cover every roll, spilled or not");
+
+        return passed;
+    }
+
+    // Method will apply random appends, retention changes, and clears to a history and a plain array, comparing them after each one
+    static boolean checkRandom() {
+        SplittableRandom random = new SplittableRandom(SEED + 3);
+        RollHistory history = new RollHistory();
+        HistorySpill spill = null;
+        int[] plain = new int[CHUNK];
+        int size = 0;
+        boolean passed = true;
+
+        for (int round = 0; passed && round < ROUNDS; round++) {
+            int operation = random.nextInt(100);
+
+            if (operation < 40) {
+                int[] batch = rolls(random, random.nextInt(CHUNK / 2), -1000, 1000);
+                history.appendAll(batch);
+                plain = ensure(plain, size + batch.length);
+                System.arraycopy(batch, 0, plain, size, batch.length);
+                size += batch.length;
+
+            } else if (operation < 70) {
+                for (int i = random.nextInt(3000); i > 0; i--) {
+                    int value = random.nextInt();
+                    history.append(value);
+                    plain = ensure(plain, size + 1);
+                    plain[size++] = value;
+
+                }
+
+            } else if (operation < 95) {
+                // keep everything, keep a few chunks in the same spill, or move to a new spill
+                int maxRolls = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(3 * CHUNK);
+
+                if (spill == null || random.nextBoolean()) {
+                    HistorySpill old = spill;
+                    spill = newSpill();
+                    history.setRetention(maxRolls, spill);
+
+                    // the old spill is no longer read once its chunks have moved
+                    if (old != null) {
+                        old.close();
+
+                    }
+
+                } else {
+                    history.setRetention(maxRolls, null);
+
+                }
+
+            } else if (operation < 97) {
+                history.clear();
+                size = 0;
+
+            }
+
+            passed = history.size() == size && statisticsMatch(history.getStatistics(), plain, size);
+
+            // random rolls and ranges, and every so often every roll in order
+            for (int i = 0; passed && size > 0 && i < 10; i++) {
+                int index = random.nextInt(size);
+                passed = history.get(index) == plain[index];
+
+            }
+
+            if (passed && size > 0) {
+                int from = random.nextInt(size);
+                int len = random.nextInt(Math.min(size - from, 3 * CHUNK) + 1);
+                int[] copy = new int[len];
+                history.copyTo(from, copy, 0, len);
+                passed = Arrays.equals(copy, Arrays.copyOfRange(plain, from, from + len));
+
+            }
+
+            if (round % FULL_CHECK_ROUNDS == 0 || round == ROUNDS - 1) {
+                passed = passed && matches(history, plain, size);
+
+            }
+
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-4s %d rounds of random operations matched a plain array (%d rolls at the end)",
+                passed ? "ok" : "FAIL", ROUNDS, history.size()));
+
+        return passed;
+    }
+
+    // Method will check that a locked file, a damaged count, a file over 2 GB, and a file that is not a session are all refused
+    static boolean checkSessionFile() throws IOException {
+        Path file = directory.resolve("locked.dat");
+        boolean passed;
+
+        try (SessionStore store = SessionStore.open(file)) {
+            store.append(new int[] {1, 2, 3}, 0, 3);
+            passed = refuses(file, SessionStore.LockedException.class);
+
+        }
+
+        // once closed, the file opens again with its rolls
+        try (SessionStore store = SessionStore.open(file)) {
+            passed &= store.size() == 3;
+
+        }
+
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(SessionStore.COUNT_POSITION);
+            raw.writeLong(Long.MAX_VALUE);
+
+        }
+
+        passed &= refuses(file, IOException.class);
+
+        // sparse, so no disk space is used
+        Path large = directory.resolve("large.dat");
+
+        try (RandomAccessFile raw = new RandomAccessFile(large.toFile(), "rw")) {
+            raw.setLength(SessionStore.MAX_CAPACITY + 1);
+
+        }
+
+        passed &= refuses(large, IOException.class);
+        Files.deleteIfExists(large);
+
+        Path text = directory.resolve("text.dat");
+        Files.write(text, "this is not a session file".getBytes(StandardCharsets.US_ASCII));
+        passed &= refuses(text, IOException.class);
+
+        System.out.println((passed ? "ok  " : "FAIL") + " locked, damaged, and oversized session files refused");
+
+        return passed;
+    }
+
+    // Method will return true if opening the file throws the expected kind of IOException (and nothing else)
+    private static boolean refuses(Path file, Class<? extends IOException> expected) {
+        try {
+            SessionStore.open(file).close();
+            return false;
+
+        } catch (IOException e) {
+            return expected.isInstance(e);
+
+        } catch (RuntimeException e) {
+            return false;
+
+        }
+    }
+
+    // Method will return true if the history holds exactly the first size rolls of values, read in order
+    static boolean matches(RollHistory history, int[] values, int size) {
+        if (history.size() != size) {
+            return false;
+
+        }
+
+        int[] position = {0};
+        boolean[] same = {true};
+        history.forEach(value -> {
+            same[0] &= value == values[position[0]++];
+
+        });
+
+        return same[0] && position[0] == size;
+    }
+
+    // Method will compare the statistics with the first size rolls of values, frequencies included
+    private static boolean statisticsMatch(RollStatistics statistics, int[] values, int size) {
+        if (statistics.getCount() != size) {
+            return false;
+
+        }
+
+        if (size == 0) {
+            return statistics.isEmpty();
+
+        }
+
+        long sum = 0;
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+            lowest = Math.min(lowest, values[i]);
+            highest = Math.max(highest, values[i]);
+
+        }
+
+        boolean passed = statistics.getSum() == sum && statistics.getLowest() == lowest && statistics.getHighest() == highest
+                && Math.abs(statistics.getMean() - (double) sum / size) <= 1e-6 * Math.max(1.0, Math.abs((double) sum / size));
+
+        // the frequencies are only tracked over ranges small enough to count
+        if (passed && statistics.hasFrequencies()) {
+            long[] counts = new long[highest - lowest + 1];
+
+            for (int i = 0; i < size; i++) {
+                counts[values[i] - lowest]++;
+
+            }
+
+            for (int face = lowest; passed && face <= highest; face++) {
+                passed = statistics.getFrequency(face) == counts[face - lowest];
+
+            }
+        }
+
+        return passed;
+    }
+
+    private static HistorySpill newSpill() {
+        HistorySpill spill = new HistorySpill(directory, CHUNK);
+        spills.add(spill);
+        return spill;
+
+    }
+
+    private static boolean throwsOutOfBounds(Runnable read) {
+        try {
+            read.run();
+            return false;
+
+        } catch (IndexOutOfBoundsException e) {
+            return true;
+
+        }
+    }
+
+    private static int[] ensure(int[] values, int size) {
+        return size <= values.length ? values : Arrays.copyOf(values, Math.max(size, values.length * 2));
+
+    }
+
+    private static int[] filled(int count, int value) {
+        int[] values = new int[count];
+        Arrays.fill(values, value);
+        return values;
+
+    }
+
+    private static int[] rolls(SplittableRandom random, int count, int lowest, int highest) {
+        int[] values = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            values[i] = lowest + random.nextInt(highest - lowest + 1);
+
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,280 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/* The RandomQualityCheck class will:
+ * ------------------------
+ * - Check that every kind of range (positive, negative, across zero, ignoring even or odd, and very large) rolls each valid value equally often, with every RandomSource
+ * - Roll millions of values per range with the fast bulk (parallel) path, from a fixed seed so every run gives the same answer
+ * - Exit with status 1 if any range fails, so it can gate a build (Maven runs it in the test phase). It needs no window and runs headless.
+ *
+ * Only the seeded generators are checked unless --source is given, since SecureRandom cannot be seeded, would give a different answer
+ * on every build, and takes most of the time.
+ *
+ * Each range gets three checks:
+ * - every value is between min and max, and of the right kind when ignoring even or odd numbers
+ * - a chi-square test of how often each value (or, for large ranges, each group of values) was rolled
+ * - a Kolmogorov-Smirnov test of the running total of those counts, which catches a drift toward one end of the range
+ *
+ * Usage:
+ * ------------------------
+ * java RandomQualityCheck [--draws n] [--seed n] [--alpha p] [--source SPLITTABLE|XOSHIRO|SECURE]
+ *
+ * Methods:
+ * ------------------------
+ * - main: reads the arguments, checks every range, and reports the results.
+ * - seededSources: returns the generators checked by default.
+ * - check: rolls and checks one range, returns true if it passed.
+ * - chiSquarePValue: returns the chance of a chi-square statistic at least this large if the values were uniform.
+ * - kolmogorovPValue: returns the chance of a Kolmogorov-Smirnov statistic at least this large if the values were uniform.
+ */
+
+public class RandomQualityCheck {
+    static final int DEFAULT_DRAWS = 4_000_000;
+    static final long DEFAULT_SEED = 20240101L;
+
+    // A test fails below this p-value. It is small since many tests are run, and the seed is fixed so a pass stays a pass.
+    static final double DEFAULT_ALPHA = 1e-4;
+
+    // Large ranges are grouped into at most this many buckets
+    static final int MAX_BUCKETS = 1024;
+
+    public static void main(String[] args) {
+        int draws = DEFAULT_DRAWS;
+        long seed = DEFAULT_SEED;
+        double alpha = DEFAULT_ALPHA;
+        RandomSource[] sources = seededSources();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--draws":
+                    draws = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--alpha":
+                    alpha = Double.parseDouble(args[++i]);
+                    break;
+                case "--source":
+                    sources = new RandomSource[] {RandomSource.valueOf(args[++i])};
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        RollSpec[] specs = {
+            // positive ranges
+            RollSpec.of(1, 2, false, false, 1),
+            RollSpec.of(1, 6, false, false, 1),
+            RollSpec.of(1, 20, false, false, 1),
+            RollSpec.of(1, 100, false, false, 1),
+            // negative ranges
+            RollSpec.of(-6, -1, false, false, 1),
+            RollSpec.of(-1000, -3, false, false, 1),
+            // ranges across zero
+            RollSpec.of(-3, 3, false, false, 1),
+            RollSpec.of(-999, 1000, false, false, 1),
+            // ignoring even or odd numbers, starting on both kinds and on both sides of zero
+            RollSpec.of(1, 6, true, false, 1),
+            RollSpec.of(1, 6, false, true, 1),
+            RollSpec.of(-7, 6, true, false, 1),
+            RollSpec.of(-7, 6, false, true, 1),
+            RollSpec.of(-8, -1, true, false, 1),
+            RollSpec.of(-8, -1, false, true, 1),
+            // large ranges, where a biased bound would show up the most (3 * 2^30 is far from a power of two)
+            RollSpec.of(Integer.MIN_VALUE, (1 << 30) - 1, false, false, 1),
+            RollSpec.of(Integer.MIN_VALUE, Integer.MAX_VALUE - 1, false, false, 1),
+            RollSpec.of(Integer.MIN_VALUE, Integer.MAX_VALUE, false, false, 1),
+            RollSpec.of(Integer.MIN_VALUE, Integer.MAX_VALUE, true, false, 1),
+        };
+
+        RollEngine rollEngine = new RollEngine();
+        SplittableRandom seeds = new SplittableRandom(seed);
+        int failures = 0;
+        long start = System.nanoTime();
+
+        for (RandomSource source : sources) {
+            System.out.println(source + (source.isSeeded() ? "" : " (not seeded, results will vary between runs)"));
+
+            for (RollSpec spec : specs) {
+                if (!check(rollEngine, spec, draws, source.create(seeds.nextLong()), alpha)) {
+                    failures++;
+
+                }
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d of %d checks passed (%d draws each, seed %d) in %.1f s",
+                specs.length * sources.length - failures, specs.length * sources.length, draws, seed, (System.nanoTime() - start) / 1e9));
+
+        if (failures > 0) {
+            System.exit(1);
+
+        }
+    }
+
+    // Method will return the generators that can be seeded, and so give the same answer every run
+    static RandomSource[] seededSources() {
+        return Arrays.stream(RandomSource.values()).filter(RandomSource::isSeeded).toArray(RandomSource[]::new);
+
+    }
+
+    // Method will roll and check one range, returning true if it passed
+    static boolean check(RollEngine rollEngine, RollSpec spec, int draws, RollRandom random, double alpha) {
+        int[] values = rollEngine.rollParallel(spec, draws, random).getValues();
+        long faces = spec.getFaces();
+        int buckets = (int) Math.min(faces, MAX_BUCKETS);
+        long[] counts = new long[buckets];
+        long outOfRange = 0;
+
+        for (int value : values) {
+            long offset = value - spec.getFirstFace();
+
+            // values must be in the range, and must be a valid face (ie. odd when ignoring even numbers)
+            if (value < spec.getMin() || value > spec.getMax() || offset % spec.getStep() != 0) {
+                outOfRange++;
+                continue;
+
+            }
+
+            counts[(int) (offset / spec.getStep() * buckets / faces)]++;
+
+        }
+
+        // chi-square against the number of faces in each bucket, and Kolmogorov-Smirnov over the running totals
+        double chiSquare = 0;
+        double largestGap = 0;
+        long seen = 0;
+        long facesSeen = 0;
+
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long bucketFaces = firstFaceOf(bucket + 1, buckets, faces) - firstFaceOf(bucket, buckets, faces);
+            double expected = (double) draws * bucketFaces / faces;
+            double difference = counts[bucket] - expected;
+            chiSquare += difference * difference / expected;
+
+            seen += counts[bucket];
+            facesSeen += bucketFaces;
+            largestGap = Math.max(largestGap, Math.abs((double) seen / draws - (double) facesSeen / faces));
+
+        }
+
+        // a single face cannot be anything but uniform
+        double chiSquareP = buckets > 1 ? chiSquarePValue(chiSquare, buckets - 1) : 1.0;
+        double kolmogorovP = buckets > 1 ? kolmogorovPValue(largestGap * Math.sqrt(draws)) : 1.0;
+        boolean passed = outOfRange == 0 && chiSquareP >= alpha && kolmogorovP >= alpha;
+
+        System.out.println(String.format(Locale.ROOT, "%-4s %-48s buckets %5d  chi-square p %.4f  KS p %.4f%s",
+                passed ? "PASS" : "FAIL", spec, buckets, chiSquareP, kolmogorovP, outOfRange > 0 ? "  " + outOfRange + " invalid values" : ""));
+
+        return passed;
+    }
+
+    // Method will return the first face (counting from 0) that falls in the bucket
+    private static long firstFaceOf(int bucket, int buckets, long faces) {
+        // the smallest face f with f * buckets / faces >= bucket
+        return (bucket * faces + buckets - 1) / buckets;
+
+    }
+
+    // Method will return the upper tail of the chi-square distribution, Q(degrees / 2, statistic / 2)
+    static double chiSquarePValue(double statistic, int degrees) {
+        return upperRegularizedGamma(degrees / 2.0, statistic / 2.0);
+
+    }
+
+    // Method will return Q(a, x), using a series when x is small and a continued fraction otherwise
+    static double upperRegularizedGamma(double a, double x) {
+        if (x <= 0) {
+            return 1.0;
+
+        }
+
+        double logPrefix = a * Math.log(x) - x - logGamma(a);
+
+        if (x < a + 1) {
+            double term = 1.0 / a;
+            double sum = term;
+
+            for (int n = 1; n < 10000 && Math.abs(term) > Math.abs(sum) * 1e-15; n++) {
+                term *= x / (a + n);
+                sum += term;
+
+            }
+
+            return Math.max(0.0, 1.0 - sum * Math.exp(logPrefix));
+        }
+
+        // Lentz's method
+        double tiny = 1e-300;
+        double b = x + 1 - a;
+        double c = 1 / tiny;
+        double d = 1 / b;
+        double h = d;
+
+        for (int n = 1; n < 10000; n++) {
+            double an = -n * (n - a);
+            b += 2;
+            d = an * d + b;
+            d = Math.abs(d) < tiny ? tiny : d;
+            c = b + an / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+
+            }
+        }
+
+        return Math.exp(logPrefix) * h;
+    }
+
+    // Method will return log(Gamma(x)) for x > 0 (Lanczos approximation)
+    static double logGamma(double x) {
+        double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+            -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x;
+        double tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+
+        for (double coefficient : coefficients) {
+            series += coefficient / ++y;
+
+        }
+
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    // Method will return the chance that sqrt(n) * D is at least lambda, from the Kolmogorov distribution
+    static double kolmogorovPValue(double lambda) {
+        if (lambda < 0.2) {
+            return 1.0;
+
+        }
+
+        double sum = 0;
+
+        for (int k = 1; k <= 100; k++) {
+            double term = Math.exp(-2.0 * k * k * lambda * lambda);
+            sum += (k % 2 == 1 ? 2 : -2) * term;
+
+            if (term < 1e-16) {
+                break;
+
+            }
+        }
+
+        return Math.min(1.0, Math.max(0.0, sum));
+    }
+}
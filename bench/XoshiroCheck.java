@@ -0,0 +1,86 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.Locale;
+
+/* The XoshiroCheck class will:
+ * ------------------------
+ * - Check Xoshiro256 against the published output of the xoshiro256** reference code (xoshiro256starstar.c) for the state {1, 2, 3, 4}
+ * - Check that seeding fills the state with the published output of the SplitMix64 reference code (splitmix64.c) for the seed 1234567
+ * - Exit with status 1 if any number differs, so it can gate a build (Maven runs it in the test phase). It needs no window and runs headless.
+ *
+ * The quality checks would still pass if a shift or a rotation were changed by mistake, as the result would still look random,
+ * but it would no longer be xoshiro256** and seeds saved with the program would roll different dice.
+ *
+ * Usage:
+ * ------------------------
+ * java XoshiroCheck
+ *
+ * Methods:
+ * ------------------------
+ * - main: runs both checks and reports the results.
+ * - checkOutput: compares the first numbers from the state {1, 2, 3, 4} with the reference ones, returns true if they matched.
+ * - checkSeeding: compares a seeded generator with one started from the reference SplitMix64 state, returns true if they matched.
+ */
+
+public class XoshiroCheck {
+    // The first ten numbers of xoshiro256** from the state {1, 2, 3, 4}
+    static final long[] REFERENCE_OUTPUT = {
+        0x0000000000002D00L, 0x0000000000000000L, 0x000000005A007080L, 0x10E0000000009D80L, 0x10E0B61CE1009D80L,
+        0x0870021CE143AD00L, 0xE071C3C2E143F089L, 0x75A1690EF7A20380L, 0x9309685B465C23F9L, 0x284F3CC2E13E3C88L,
+    };
+
+    // The first four numbers of SplitMix64 from the seed 1234567
+    static final long SPLITMIX_SEED = 1234567L;
+    static final long[] SPLITMIX_OUTPUT = {0x599ED017FB08FC85L, 0x2C73F08458540FA5L, 0x883EBCE5A3F27C77L, 0x3FBEF740E9177B3FL};
+
+    // How many numbers the seeded generators are compared over
+    static final int SEEDED_NUMBERS = 1000;
+
+    public static void main(String[] args) {
+        int failures = 0;
+        failures += checkOutput() ? 0 : 1;
+        failures += checkSeeding() ? 0 : 1;
+
+        System.out.println(failures == 0 ? "All xoshiro256** checks passed" : failures + " xoshiro256** check(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+
+    }
+
+    // Method will compare the first numbers from the state {1, 2, 3, 4}, and the top 32 bits rolls are drawn from
+    static boolean checkOutput() {
+        Xoshiro256 random = new Xoshiro256(1, 2, 3, 4);
+        Xoshiro256 ints = new Xoshiro256(1, 2, 3, 4);
+        boolean passed = true;
+
+        for (int i = 0; i < REFERENCE_OUTPUT.length; i++) {
+            long next = random.nextLong();
+            int nextInt = ints.getAsInt();
+            boolean same = next == REFERENCE_OUTPUT[i] && nextInt == (int) (REFERENCE_OUTPUT[i] >>> 32);
+            passed &= same;
+
+            System.out.println(String.format(Locale.ROOT, "%-4s output %d: %016x, reference %016x",
+                    same ? "ok" : "FAIL", i + 1, next, REFERENCE_OUTPUT[i]));
+
+        }
+
+        return passed;
+    }
+
+    // Method will check a generator seeded with 1234567 rolls the same numbers as one started from SplitMix64's first four numbers
+    static boolean checkSeeding() {
+        Xoshiro256 seeded = new Xoshiro256(SPLITMIX_SEED);
+        Xoshiro256 reference = new Xoshiro256(SPLITMIX_OUTPUT[0], SPLITMIX_OUTPUT[1], SPLITMIX_OUTPUT[2], SPLITMIX_OUTPUT[3]);
+        boolean passed = true;
+
+        for (int i = 0; passed && i < SEEDED_NUMBERS; i++) {
+            passed = seeded.nextLong() == reference.nextLong();
+
+        }
+
+        System.out.println((passed ? "ok  " : "FAIL") + " seed " + SPLITMIX_SEED + " fills the state with SplitMix64's reference output");
+
+        return passed;
+    }
+}
@@ -0,0 +1,84 @@
+// =================================
+// Dice Program
+// =================================
+
+package jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* The DiceJmh class will:
+ * ------------------------
+ * - Run one of the benchmarks registered by DiceBenchmark under JMH, chosen by the "name" parameter (ie. -p name=roll.100dice)
+ *
+ * JMH cannot generate benchmarks for classes in the default package, which every class of the program is in, and a class in a package
+ * cannot name them. So this class lives in its own package and looks DiceBenchmark up by name once, before anything is measured.
+ * DiceBenchmark's main passes every benchmark name, so it is the usual way to run these.
+ *
+ * Methods:
+ * ------------------------
+ * - setUp: builds the work of the benchmark named.
+ * - run: does the work of the benchmark once.
+ * - tearDown: deletes the files written by the export benchmarks.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class DiceJmh {
+    @Param({"roll.1dice"})
+    public String name;
+
+    private Path tempDirectory;
+    private Callable<Long> work;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("dice-benchmark");
+        work = (Callable<Long>) Class.forName("DiceBenchmark")
+                .getMethod("work", String.class, Path.class)
+                .invoke(null, name, tempDirectory);
+
+        if (work == null) {
+            throw new IllegalArgumentException("There is no benchmark named " + name);
+
+        }
+    }
+
+    @Benchmark
+    public Long run() throws Exception {
+        return work.call();
+
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(tempDirectory)) {
+            files.forEach(file -> file.toFile().delete());
+
+        }
+
+        Files.deleteIfExists(tempDirectory);
+
+    }
+}
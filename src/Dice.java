@@ -6,7 +6,11 @@
 // Dice Program
 // =================================
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -15,12 +19,16 @@ import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
 import javafx.geometry.Insets;
 import javafx.scene.layout.GridPane;
+import javafx.util.Duration;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.InputMismatchException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
 import javafx.stage.Modality;
 
 /* The Dice class will:
@@ -31,16 +39,27 @@ import javafx.stage.Modality;
  * Methods:
  * ------------------------
  * - start: loads primary stage
- * - showLoadingWindow: displays a loading screen while the program loads a section of code. Returns a Stage to be closed later.
+ * - showLoadingWindow: displays the (one, reused) loading window if a background task takes longer than a moment, with its progress and a cancel button. Returns a Loading to be closed later.
  * - showHistoryWindow: loads the history windows to display past values with options.
- * - showExportWindow: if the export button is clicked within the history stage, showExportWindow will prompt the user to choose a directory and file name.
- * - saveExport: showExportWindow will call the saveExport method to save the file to the selected directory.
- * - clearHistory: will clear the pastVals array and subsequently empty the history window's text area.
+ * - showExportWindow: if the export button is clicked within the history stage, showExportWindow will prompt the user to choose a directory, file name, and format (text report, CSV, or binary).
+ * - saveExport: showExportWindow will call the saveExport method to stream the past results to a file in the selected directory, in the background.
+ * - clearHistory: will clear the pastVals history and the session file, and subsequently empty the history window's list.
+ * - openSession / saveToSession / clearSession / closeSession: keep the history in a memory mapped session file so it is reloaded the next time the program starts.
+ * - stop: closes the session file, deletes the spilled history, and writes the metrics (see DiceMetrics) next to it when the program exits.
  * - expandOptions: extends the primary window to display additional options, and greys out old options
- * - setValueField: when custom values are used, this sets values to be used in calculations later, returns true if there was an error (a non numerical value was inputted).
+ * - setExpression: compiles the dice expression (ie. 4d6kh3+2) typed in the additional options, which is then rolled in place of the min and max values.
+ * - setRandomSource: makes a new generator of the kind chosen in the additional options, from the seed typed in (or a random seed if there is none).
+ * - setValueField: when custom values are used, this parses the min and max values (once per change) to be used in calculations later.
+ * - updateOptions: checks the options as soon as they change and makes the RollSpec the next roll will use, disabling "Roll" while they cannot be rolled.
+ * - showOptions: shows the number of faces (or the expression's range) and why the options cannot be rolled, a moment after the typing stops.
+ * - showOddsWindow: works out the exact chance of every total for the current options in the background, with the DistributionCalculator rather than by rolling. Not for dice expressions.
+ * - showOddsList: displays the chances once they have been worked out.
  * - showAboutWindow: displays a small window with program info.
- * - newVal: generates a new random number with given constraints (range, ignore even, ignore odd).
- * - main: launches the application.
+ * - takeRollSpec: returns the snapshot of the options made by updateOptions, informing the user if they cannot be used.
+ * - calculate: rolls a single die (or dice expression) and publishes the result, highest, and lowest values.
+ * - calculateInBackground: rolls multiple dice (or dice expressions) in a background task, with progress and cancelling, publishing the rolls in batches.
+ * - publishRolls: adds a batch of rolls to the history, the session file, and the main window's fields.
+ * - main: launches the application. The jar starts from DiceLauncher instead, which only opens the window when there are no arguments.
  */
 
 public class Dice extends Application {
@@ -53,27 +72,51 @@ public class Dice extends Application {
     int sliderMax = 20;
     int sliderInit = 6;
     int sliderMinorTickCount = sliderMax - 1;
-    int numFaces = 6;
+    long numFaces = 6;
     int startingVal = 1;
     int maxInRange = 6;
     int numOfDice = 1;
     int diceSliderMax = 100;
     int diceSliderMinorTickCount = diceSliderMax - 1;
+    int historyCellHeight = 24;
+    int summaryRowCount = 4;
+    int rollBatchSize = 4096;
     boolean clearPerRoll = false;
-    boolean firstIteration = true;
     boolean ignoreEven = false;
     boolean ignoreOdd = false;
-    boolean valueMinError = false;
-    boolean valueMaxError = false;
-    boolean calculationError = false;
+    int optionsDelayMillis = 150;
+    String valueError = null;
+    String optionsError = null;
+    boolean rolling = false;
+    RollEngine rollEngine = new RollEngine();
+    RollSpec optionsSpec = RollSpec.of(startingVal, maxInRange, ignoreEven, ignoreOdd, numOfDice);
+    PauseTransition optionsDelay = null;
+    DiceExpression rollExpression = null;
+    String expressionError = null;
+    RandomSource randomSource = RandomSource.SPLITTABLE;
+    long seed = ThreadLocalRandom.current().nextLong();
+    RollRandom rollRandom = randomSource.create(seed);
+    String seedError = null;
+    RollStatistics resultStats = new RollStatistics();
+    HistoryExporter historyExporter = new HistoryExporter();
+    LoadingWindow loadingWindow = new LoadingWindow(gridPadding, verticalGap, horizontalGap);
+    DistributionCalculator distributionCalculator = new DistributionCalculator();
+    Path sessionFile = Paths.get(System.getProperty("user.home"), ".dice", "session.dat");
+    SessionStore sessionStore = null;
+    HistorySpill historySpill = new HistorySpill(sessionFile.getParent(), RollHistory.CHUNK_SIZE);
+    int historyMemoryLimit = 0;
+    int[] historyMemoryLimits = {0, 100_000, 1_000_000, 10_000_000};
+    DiceMetrics metrics = DiceMetrics.get();
+    Path metricsFile = sessionFile.resolveSibling("metrics.txt");
 
     // Start the application
     public void start(Stage appStage) {
-        // Show a loading windows to indicate that the program is running. In most cases, the loading window will not be seen.
-        Stage loadingStage = showLoadingWindow();
+        metrics.register();
 
-        // Array list will be used to store history
-        ArrayList<Integer> pastVals = new ArrayList<>();
+        // Roll history will be used to store history as primitive ints, starting with the rolls saved by the last session
+        RollHistory pastVals = new RollHistory();
+        pastVals.setRetention(historyMemoryLimit, historySpill);
+        openSession(pastVals);
 
         // Initialize primary window's grid, scene, labels, and text field for showing results.
         GridPane gridPane = new GridPane();
@@ -113,6 +156,10 @@ public class Dice extends Application {
         Button historyButton = new Button("Past Results");
         Button optionsButton = new Button("Custom Options");
 
+        // The number of faces and the Roll button's tooltip are only rewritten once the options stop changing for a moment
+        optionsDelay = new PauseTransition(Duration.millis(optionsDelayMillis));
+        optionsDelay.setOnFinished(event -> showOptions(numFacesLabel, calcButton));
+
         // Set grid padding and gaps
         Insets paddingField = new Insets(gridPadding, gridPadding, gridPadding, gridPadding);
         gridPane.setPadding(paddingField);
@@ -135,9 +182,27 @@ public class Dice extends Application {
 
         // Get new random number when "Roll" button is clicked
         calcButton.setOnAction(event -> {
-            // if there are multiple die, show loading window and go straight to history window
-            if (numOfDice > 1) {
-                loadingStage.show();
+            IntFunction<RollResult> roller;
+            int count;
+
+            // Every roll is made from the current generator, so the same kind and seed always give the same rolls
+            RollRandom random = rollRandom;
+
+            // Roll is disabled while the options cannot be rolled, so they were already checked as they changed
+            if (rollError() != null) {
+                return;
+
+            // if a dice expression was entered, it is rolled instead of the min and max values
+            } else if (rollExpression != null) {
+                DiceExpression expression = rollExpression;
+                roller = batchSize -> expression.roll(batchSize, random);
+                count = numOfDice;
+
+            // Otherwise roll the snapshot of the options made when they last changed
+            } else {
+                RollSpec rollSpec = optionsSpec;
+                roller = batchSize -> rollEngine.roll(rollSpec, batchSize, random);
+                count = rollSpec.getDice();
 
             }
 
@@ -147,19 +212,12 @@ public class Dice extends Application {
 
             }
 
-            for (int i = 0; i < numOfDice; i++) {
-                calculate(currValField, lowestValField, highestValField, pastVals);
-
-                if (calculationError){
-                    calculationError = false;
-                    break;
-
-                }
-            }
+            // if there are multiple die, roll in the background and go straight to history window
+            if (count > 1) {
+                calculateInBackground(roller, count, appStage, calcButton, currValField, lowestValField, highestValField, pastVals, paddingField);
 
-            if (numOfDice > 1) {
-                showHistoryWindow(appStage, pastVals, paddingField);
-                loadingStage.close();
+            } else {
+                calculate(roller, currValField, lowestValField, highestValField, pastVals);
 
             }
         });
@@ -170,7 +228,7 @@ public class Dice extends Application {
             lowestValField.setText("");
             highestValField.setText("");
 
-            firstIteration = true;
+            resultStats.reset();
 
         });
 
@@ -182,14 +240,14 @@ public class Dice extends Application {
 
         // Open additional options when "Custom Options" button is clicked
         optionsButton.setOnAction(event -> {
-            expandOptions(appStage, gridPane, paddingField, sidesSlider, optionsButton, numFacesLabel);
+            expandOptions(appStage, gridPane, paddingField, sidesSlider, optionsButton, calcButton, pastVals);
 
         });
 
         // Updates settings when the slider is changed
         sidesSlider.valueProperty().addListener(e -> {
-            numFaces = (int) sidesSlider.getValue();
-            numFacesLabel.setText("Number of Faces: " + numFaces);
+            maxInRange = (int) sidesSlider.getValue();
+            updateOptions(calcButton);
 
         });
 
@@ -198,85 +256,64 @@ public class Dice extends Application {
         appStage.setTitle("Dice");
         appStage.setResizable(false);
 
-        // Close loading window, open application windows
-        loadingStage.close();
-
+        // Open application windows
         appStage.show();
         appStage.setWidth(appStage.getWidth() + 50);
         numFacesLabel.setPrefWidth(numFacesLabel.getWidth() + 25);
 
     }
 
-    // Method for displaying loading window
-    public Stage showLoadingWindow() {
-
-        // Initialize grid pane, loading indicator, label
-        GridPane gridPane = new GridPane();
-
-        ProgressIndicator loadingIndicator = new ProgressIndicator(-1.0);
-        Label loadingLabel = new Label("Loading...");
-
-        Insets paddingField = new Insets(gridPadding, gridPadding, gridPadding, gridPadding);
-
-        gridPane.setPadding(paddingField);
-        gridPane.setHgap(verticalGap);
-        gridPane.setVgap(horizontalGap);
-
-        gridPane.add(loadingIndicator, 0, 0);
-        gridPane.add(loadingLabel, 1, 0);
-
-        // Show loading Stage
-        Scene scene = new Scene(gridPane);
-        Stage loadingStage = new Stage();
-        loadingStage.setScene(scene);
-        loadingStage.setResizable(false);
-        loadingStage.show();
-
-        return loadingStage;
+    // Method for displaying loading window, with the progress of the task and a button to cancel it
+    public LoadingWindow.Loading showLoadingWindow(Task<?> task) {
+        return loadingWindow.show(task);
 
     }
 
     // Method for showing the history or "Past Values" windows
-    public void showHistoryWindow(Stage appStage, ArrayList<Integer> pastVals, Insets paddingField) {
-        Stage loadingStage = showLoadingWindow();
+    public void showHistoryWindow(Stage appStage, RollHistory pastVals, Insets paddingField) {
+        long started = System.nanoTime();
+        metrics.addHistoryOpen();
 
         try {
-            String data = "";
-            String average = "";
-            int highestVal = pastVals.get(0);
-            int lowestVal = pastVals.get(0);
-            int sum = 0;
-
-            // Get a string of data
-            data += "Roll #\n";
-            data += "\n";
+            // The summary is kept up to date as rolls are added, so it does not need to be recomputed here
+            RollStatistics pastStats = pastVals.getStatistics();
 
-            for (int i = 0; i < pastVals.size(); i++) {
-                data += (i + 1) + ".     " + pastVals.get(i) + "\n";
+            // if no values have been saved, go straight to the alert
+            if (pastStats.isEmpty()) {
+                throw new IndexOutOfBoundsException();
+            }
 
-                if (highestVal < pastVals.get(i)) {
-                    highestVal = pastVals.get(i);
+            // The list reads straight from the history, and only the visible rows are ever turned into text
+            ListView<Integer> historyList = new ListView<>(FXCollections.observableList(new AbstractList<Integer>() {
+                @Override
+                public Integer get(int index) {
+                    return pastVals.get(index);
 
                 }
 
-                if (lowestVal > pastVals.get(i)) {
-                    lowestVal = pastVals.get(i);
+                @Override
+                public int size() {
+                    return pastVals.size();
 
                 }
+            }));
+            historyList.setFixedCellSize(historyCellHeight);
+            historyList.setCellFactory(list -> new ListCell<Integer>() {
+                @Override
+                protected void updateItem(Integer value, boolean empty) {
+                    super.updateItem(value, empty);
+                    setText(empty || value == null ? null : (getIndex() + 1) + ".     " + value);
 
-                sum += pastVals.get(i);
-
-            }
+                }
+            });
 
-            data += "\n";
-            data += "Lowest Value: " + lowestVal + "\n";
-            data += "Highest Value: " + highestVal + "\n";
-            average += (((double) sum) / ((double) pastVals.size()) + "000").substring(0, 5);
-            data += "Average: " + average + "\n";
+            // The summary is shown separately, under the list
+            Label rollNumLabel = new Label("Roll #");
+            TextArea summaryField = new TextArea(RollStatistics.buildSummary(pastStats));
+            summaryField.setEditable(false);
+            summaryField.setPrefRowCount(summaryRowCount);
 
-            // Initialize text Area, buttons, grid pane, scene, stage, and show window
-            TextArea historyField = new TextArea(data);
-            historyField.setEditable(false);
+            // Initialize buttons, grid pane, scene, stage, and show window
             Button cancelButton = new Button("Okay");
             Button exportButton = new Button("Export");
             Button clearButton = new Button("Clear History");
@@ -285,10 +322,12 @@ public class Dice extends Application {
             historyPane.setPadding(paddingField);
             historyPane.setHgap(verticalGap);
             historyPane.setVgap(horizontalGap);
-            historyPane.add(historyField, 0, 0, 3, 1);
-            historyPane.add(exportButton, 0, 1);
-            historyPane.add(clearButton, 1, 1);
-            historyPane.add(cancelButton, 2, 1);
+            historyPane.add(rollNumLabel, 0, 0, 3, 1);
+            historyPane.add(historyList, 0, 1, 3, 1);
+            historyPane.add(summaryField, 0, 2, 3, 1);
+            historyPane.add(exportButton, 0, 3);
+            historyPane.add(clearButton, 1, 3);
+            historyPane.add(cancelButton, 2, 3);
 
             Scene historyScene = new Scene(historyPane);
             Stage historyStage = new Stage();
@@ -301,8 +340,8 @@ public class Dice extends Application {
             historyStage.setY(appStage.getY());
             historyStage.setX(appStage.getX());
             historyStage.setResizable(false);
-            loadingStage.close();
             historyStage.show();
+            metrics.recordHistoryOpen(System.nanoTime() - started);
 
             // Set cancel button to close window
             cancelButton.setOnAction(event1 -> {
@@ -310,15 +349,13 @@ public class Dice extends Application {
 
             });
 
-            String finalData = data;
-
             // Set export button to open export window
             exportButton.setOnAction(event1 -> {
-                showExportWindow(historyStage, appStage, paddingField, finalData);
+                showExportWindow(historyStage, appStage, paddingField, pastVals);
 
             });
 
-            // Set clear history button to clear the pastVals array
+            // Set clear history button to clear the pastVals history
             clearButton.setOnAction(event1 -> {
                 clearHistory(pastVals);
                 historyStage.close();
@@ -327,7 +364,6 @@ public class Dice extends Application {
 
         // catch statement will display an alert when index does not exist (ie. when no values have been saved)
         } catch (IndexOutOfBoundsException e) {
-            loadingStage.close();
             Alert alert = new Alert(Alert.AlertType.ERROR, "No past values to show! Try clicking \"Roll\" first.");
             alert.showAndWait();
 
@@ -335,18 +371,20 @@ public class Dice extends Application {
     }
 
     // Method will export data to selected directory
-    public void showExportWindow(Stage historyStage, Stage appStage, Insets paddingField, String data) {
-        Stage loadingStage = showLoadingWindow();
+    public void showExportWindow(Stage historyStage, Stage appStage, Insets paddingField, RollHistory pastVals) {
+        // Get directory from user, the time spent choosing is not loading
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        File selectedDirectory = directoryChooser.showDialog(historyStage);
 
         try {
-            // Get directory from user
-            DirectoryChooser directoryChooser = new DirectoryChooser();
-            File selectedDirectory = directoryChooser.showDialog(historyStage);
 
             // Initialize labels, text field, buttons, grid pane, scene, and stage
             Label directoryLabel = new Label("Directory:  " + selectedDirectory.getAbsolutePath());
             Label fileNameLabel = new Label("File Name:");
-            Label fileExtensionLabel = new Label(".txt");
+            Label fileExtensionLabel = new Label(HistoryExporter.Format.TEXT.getExtension());
+            Label formatLabel = new Label("Format:");
+            ComboBox<HistoryExporter.Format> formatBox = new ComboBox<>(FXCollections.observableArrayList(HistoryExporter.Format.values()));
+            formatBox.setValue(HistoryExporter.Format.TEXT);
             TextField fileName = new TextField("DiceRollData");
             Button saveButton = new Button("Save");
             Button cancelButtonExport = new Button("Close");
@@ -359,8 +397,10 @@ public class Dice extends Application {
             exportPane.add(fileNameLabel, 0, 1);
             exportPane.add(fileName, 1, 1);
             exportPane.add(fileExtensionLabel, 2, 1);
-            exportPane.add(saveButton, 0, 2);
-            exportPane.add(cancelButtonExport, 1, 2);
+            exportPane.add(formatLabel, 0, 2);
+            exportPane.add(formatBox, 1, 2);
+            exportPane.add(saveButton, 0, 3);
+            exportPane.add(cancelButtonExport, 1, 3);
 
             Scene exportScene = new Scene(exportPane);
 
@@ -372,12 +412,17 @@ public class Dice extends Application {
             exportStage.setY(appStage.getY());
             exportStage.setX(appStage.getX());
             exportStage.setResizable(false);
-            loadingStage.close();
             exportStage.show();
 
-            // Set save button to save the data as a .txt to the desired directory
+            // Show the extension of the chosen format
+            formatBox.valueProperty().addListener(e -> {
+                fileExtensionLabel.setText(formatBox.getValue().getExtension());
+
+            });
+
+            // Set save button to save the data in the chosen format to the desired directory
             saveButton.setOnAction(event2 -> {
-                saveExport(selectedDirectory, fileName, exportStage, data);
+                saveExport(selectedDirectory, fileName, formatBox.getValue(), exportStage, pastVals);
 
             });
 
@@ -387,68 +432,85 @@ public class Dice extends Application {
 
             });
 
+        // if no directory was chosen (ie. the chooser was cancelled), there is no export window to show
         } catch (Exception e) {
-            loadingStage.close();
+            return;
 
         }
     }
 
     // When the "save" button is clicked, this method will save the file
-    public void saveExport(File selectedDirectory, TextField fileName, Stage exportStage, String data) {
-        Stage loadingStage = showLoadingWindow();
+    public void saveExport(File selectedDirectory, TextField fileName, HistoryExporter.Format format, Stage exportStage, RollHistory pastVals) {
+        Path exportFile = selectedDirectory.toPath().resolve(fileName.getText() + format.getExtension());
 
-        try {
-            File tempFile = new File(selectedDirectory.getAbsolutePath() + "\\" + fileName.getText() + ".txt");
-
-            // Use the temp file to see if the file name already exists at the desired directory
-            if (tempFile.exists()) {
-                // if the file already exists, display an alert to inform the user
-                Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "This file already exists! Do you wish to overwrite?");
-                alert.setHeaderText("WARNING");
-                Optional<ButtonType> result = alert.showAndWait();
-
-                // if the cancel button was clicked, close the export stage
-                if (result.get() == ButtonType.CANCEL) {
-                    loadingStage.close();
-                    exportStage.close();
-
-                // Else, replace the file, inform the user of the file creation.
-                } else {
-                    FileWriter fileWriter = new FileWriter(selectedDirectory.getAbsolutePath() + "\\" + fileName.getText() + ".txt");
-                    fileWriter.write(data);
-                    fileWriter.close();
-                    loadingStage.close();
-                    alert = new Alert(Alert.AlertType.INFORMATION, "The data was successfully exported.");
-                    alert.showAndWait();
-                    exportStage.close();
+        // if the file already exists, display an alert to inform the user
+        if (Files.exists(exportFile)) {
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "This file already exists! Do you wish to overwrite?");
+            alert.setHeaderText("WARNING");
+            Optional<ButtonType> result = alert.showAndWait();
 
+            // if the cancel button was clicked, close the export stage
+            if (result.get() == ButtonType.CANCEL) {
+                exportStage.close();
+                return;
 
-                }
+            }
+        }
 
-            // if the file does not exist, create the file, inform the user of the file creation.
-            } else {
-                FileWriter fileWriter = new FileWriter(selectedDirectory.getAbsolutePath() + "\\" + fileName.getText() + ".txt");
-                fileWriter.write(data);
-                fileWriter.close();
-                loadingStage.close();
-                Alert alert = new Alert(Alert.AlertType.INFORMATION, "The data was successfully exported.");
-                alert.showAndWait();
-                exportStage.close();
+        // The file is written in the background, so the loading window can show the progress and cancel the export
+        class ExportTask extends Task<Boolean> implements HistoryExporter.Progress {
+            @Override
+            protected Boolean call() throws IOException {
+                return historyExporter.export(format, pastVals, RollStatistics.buildSummary(pastVals.getStatistics()), exportFile, this);
 
             }
 
-        // if there was an OI error (ie. access denied), inform the user and abort
-        } catch (IOException e) {
-            loadingStage.close();
+            @Override
+            public void update(long done, long total) {
+                updateProgress(done, total);
+
+            }
+        }
+
+        ExportTask exportTask = new ExportTask();
+        LoadingWindow.Loading loading = showLoadingWindow(exportTask);
+        long started = System.nanoTime();
+
+        // Inform the user of the file creation
+        exportTask.setOnSucceeded(event -> {
+            loading.close();
+            metrics.recordExport(System.nanoTime() - started);
+            Alert alert = new Alert(Alert.AlertType.INFORMATION, "The data was successfully exported.");
+            alert.showAndWait();
+            exportStage.close();
+
+        });
+
+        // if the user cancelled, nothing was written
+        exportTask.setOnCancelled(event -> {
+            loading.close();
+            Alert alert = new Alert(Alert.AlertType.INFORMATION, "The export was cancelled. No data was exported.");
+            alert.showAndWait();
+
+        });
+
+        // if there was an IO error (ie. access denied), inform the user and abort
+        exportTask.setOnFailed(event -> {
+            loading.close();
             Alert alert = new Alert(Alert.AlertType.ERROR, "There has been a directory error! Data was not successfully exported.");
-            e.printStackTrace();
+            exportTask.getException().printStackTrace();
             alert.showAndWait();
 
-        }
+        });
+
+        Thread exportThread = new Thread(exportTask, "Dice export");
+        exportThread.setDaemon(true);
+        exportThread.start();
+
     }
 
     // Method will clear the pastVals, ask the user for confirmation, and inform the user that the data has been cleared
-    public void clearHistory(ArrayList<Integer> pastVals) {
+    public void clearHistory(RollHistory pastVals) {
         // if clear per roll checkbox is selected, do not display dialogue boxes
         if (!clearPerRoll) {
             Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "Erase all data?");
@@ -456,6 +518,7 @@ public class Dice extends Application {
 
             if (result.get() == ButtonType.OK) {
                 pastVals.clear();
+                clearSession();
                 alert = new Alert(Alert.AlertType.INFORMATION, "Past values have been cleared.");
                 alert.setHeaderText("Got it");
                 alert.showAndWait();
@@ -464,19 +527,137 @@ public class Dice extends Application {
 
         } else {
             pastVals.clear();
+            clearSession();
 
         }
     }
 
+    // Method will open the session file and load its rolls into pastVals. if the file cannot be used (or another copy of the program has it open),
+    // the program carries on without saving rolls.
+    // While it is open, the rolls spilled from pastVals are read back from the session file rather than copied to the history spill.
+    public void openSession(RollHistory pastVals) {
+        try {
+            sessionStore = SessionStore.open(sessionFile);
+            pastVals.setRetention(historyMemoryLimit, sessionStore);
+            sessionStore.load(pastVals);
+
+        // another copy of the program is saving to the file, so this one keeps its rolls in memory (and the history spill) only
+        } catch (SessionStore.LockedException e) {
+            sessionStore = null;
+            Alert alert = new Alert(Alert.AlertType.WARNING, "The past session is already open in another Dice window. Rolls made in this window will not be saved between sessions.");
+            System.err.println(e.getMessage());
+            alert.showAndWait();
+
+        } catch (IOException e) {
+            sessionStore = null;
+            Alert alert = new Alert(Alert.AlertType.ERROR, "The past session could not be loaded from " + sessionFile + ". Rolls will not be saved between sessions.");
+            e.printStackTrace();
+            alert.showAndWait();
+
+        }
+    }
+
+    // Method will save a batch of rolls to the session file, before they are added to pastVals
+    public void saveToSession(int[] values, RollHistory pastVals) {
+        if (sessionStore == null) {
+            return;
+
+        }
+
+        try {
+            sessionStore.append(values, 0, values.length);
+
+        // if the file is full or the disk has failed, stop saving rather than asking on every roll
+        // the spilled rolls are copied to the history spill first, as they can no longer be read back from the session file
+        } catch (IOException e) {
+            pastVals.setRetention(historyMemoryLimit, historySpill);
+            closeSession();
+            // shown without waiting, as this can happen while a background roll is publishing (and its loading window is open)
+            Alert alert = new Alert(Alert.AlertType.ERROR, "Rolls can no longer be saved to " + sessionFile + ". Past results will be kept until the program is closed.");
+            e.printStackTrace();
+            alert.show();
+
+        }
+    }
+
+    // Method will remove all rolls from the session file
+    public void clearSession() {
+        if (sessionStore != null) {
+            sessionStore.clear();
+
+        }
+    }
+
+    // Method will flush and close the session file
+    public void closeSession() {
+        if (sessionStore == null) {
+            return;
+
+        }
+
+        try {
+            sessionStore.close();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+
+        } finally {
+            sessionStore = null;
+
+        }
+    }
+
+    // Close the session file when the application exits
+    @Override
+    public void stop() {
+        closeSession();
+        historySpill.close();
+
+        // leave the metrics of this run next to the session file
+        try {
+            metrics.writeTo(metricsFile);
+
+        } catch (IOException e) {
+            System.err.println("Could not write " + metricsFile + ": " + e.getMessage());
+
+        }
+
+    }
+
     // Method will expand the main window to show additional options
-    public void expandOptions(Stage appStage, GridPane gridPane, Insets paddingField, Slider sidesSlider, Button optionsButton, Label numFacesLabel) {
+    public void expandOptions(Stage appStage, GridPane gridPane, Insets paddingField, Slider sidesSlider, Button optionsButton, Button calcButton, RollHistory pastVals) {
         // Initialize labels, textfield, check boxes, buttons, slider, button grid, grid pane
         Label minLabel = new Label("Minimum Value:");
         Label maxLabel = new Label("Maximum Value:");
         Label multiDiceInfoLabel = new Label("The results of multiple die are displayed in the \"Past Results\" window.");
+        Label expressionLabel = new Label("Dice Expression:");
+        Label generatorLabel = new Label("Generator:");
+        Label memoryLabel = new Label("Rolls Kept in Memory:");
 
         TextField minValField = new TextField("1");
         TextField maxValField = new TextField(Integer.toString((int) sidesSlider.getValue())); // This field is set to the slider's value
+        TextField expressionField = new TextField();
+        expressionField.setPromptText("ie. 4d6kh3+2");
+
+        ComboBox<RandomSource> generatorBox = new ComboBox<>(FXCollections.observableArrayList(RandomSource.values()));
+        generatorBox.setValue(randomSource);
+        TextField seedField = new TextField();
+
+        // Older rolls are moved to disk (compressed), they can still be seen and exported
+        ComboBox<String> memoryBox = new ComboBox<>();
+
+        for (int limit : historyMemoryLimits) {
+            memoryBox.getItems().add(limit == 0 ? "All" : String.format("%,d", limit));
+
+        }
+
+        for (int i = 0; i < historyMemoryLimits.length; i++) {
+            if (historyMemoryLimits[i] == historyMemoryLimit) {
+                memoryBox.getSelectionModel().select(i);
+
+            }
+        }
+        seedField.setPromptText("Seed: " + seed);
 
         CheckBox ignoreOddCheck = new CheckBox("Ignore Odd Numbers");
         CheckBox ignoreEvenCheck = new CheckBox("Ignore Even Numbers");
@@ -492,12 +673,14 @@ public class Dice extends Application {
         numOfDiceSlider.setBlockIncrement(1);
         Label numDiceLabel = new Label("Number of Dice: " + (int) numOfDiceSlider.getValue());
 
+        Button oddsButton = new Button("Odds");
         Button aboutButton = new Button("About");
         Button cancelOptionsButton = new Button("Cancel");
 
         GridPane buttonGrid = new GridPane();
-        buttonGrid.add(aboutButton, 0, 0);
-        buttonGrid.add(cancelOptionsButton, 1, 0);
+        buttonGrid.add(oddsButton, 0, 0);
+        buttonGrid.add(aboutButton, 1, 0);
+        buttonGrid.add(cancelOptionsButton, 2, 0);
         buttonGrid.setVgap(verticalGap);
         buttonGrid.setHgap(horizontalGap);
 
@@ -510,7 +693,14 @@ public class Dice extends Application {
         gridPane.add(ignoreOddCheck, 2, 5);
         gridPane.add(ignoreEvenCheck, 2, 6);
         gridPane.add(clearPerRollCheck, 2, 7);
+        gridPane.add(expressionLabel, 0, 9);
+        gridPane.add(expressionField, 1, 9);
         gridPane.add(buttonGrid, 2, 9);
+        gridPane.add(generatorLabel, 0, 10);
+        gridPane.add(generatorBox, 1, 10);
+        gridPane.add(seedField, 2, 10);
+        gridPane.add(memoryLabel, 0, 11);
+        gridPane.add(memoryBox, 1, 11);
         gridPane.add(multiDiceInfoLabel, 0, 8, 3, 1);
 
         // disable old options
@@ -518,21 +708,46 @@ public class Dice extends Application {
         optionsButton.setDisable(true);
 
         // Initialize stage
-        appStage.setHeight(appStage.getHeight() * 15 / 8);
+        appStage.setHeight(appStage.getHeight() * 9 / 4);
 
-        // Initialize to detect errors and set difference, these should return false most of the time
-        valueMinError = setValueField(minValField, maxValField, numFacesLabel);
-        valueMaxError = setValueField(minValField, maxValField, numFacesLabel);
+        // Initialize the values from the fields, this should find no errors
+        setValueField(minValField, maxValField, calcButton);
 
-        // If the minValField was changed, detect errors and set the difference
+        // If the minValField or maxValField was changed, parse both once and check the options
         minValField.textProperty().addListener(e -> {
-            valueMinError = setValueField(minValField, maxValField, numFacesLabel);
+            setValueField(minValField, maxValField, calcButton);
 
         });
 
-        // If the maxValField was changed, detect errors and set the difference
         maxValField.textProperty().addListener(e -> {
-            valueMaxError = setValueField(minValField, maxValField, numFacesLabel);
+            setValueField(minValField, maxValField, calcButton);
+
+        });
+
+        // If the expressionField was changed, compile the expression now so rolling it never has to read the text
+        expressionField.textProperty().addListener(e -> {
+            setExpression(expressionField.getText(), calcButton);
+
+        });
+
+        // if the generator or seed was changed, start a new generator. A generator that cannot be seeded has no use for the seed field.
+        generatorBox.valueProperty().addListener(e -> {
+            seedField.setDisable(!generatorBox.getValue().isSeeded());
+            setRandomSource(generatorBox.getValue(), seedField);
+            updateOptions(calcButton);
+
+        });
+
+        seedField.textProperty().addListener(e -> {
+            setRandomSource(generatorBox.getValue(), seedField);
+            updateOptions(calcButton);
+
+        });
+
+        // if the rolls kept in memory was changed, spill any extra rolls to disk now
+        memoryBox.getSelectionModel().selectedIndexProperty().addListener(e -> {
+            historyMemoryLimit = historyMemoryLimits[memoryBox.getSelectionModel().getSelectedIndex()];
+            pastVals.setRetention(historyMemoryLimit, null);
 
         });
 
@@ -547,6 +762,8 @@ public class Dice extends Application {
                 ignoreEven = false;
 
             }
+
+            updateOptions(calcButton);
         });
 
         // Likewise for ignoreOddCheck
@@ -560,6 +777,8 @@ public class Dice extends Application {
                 ignoreOdd = false;
 
             }
+
+            updateOptions(calcButton);
         });
 
         // if clear per roll checkbox is selected
@@ -577,6 +796,13 @@ public class Dice extends Application {
         numOfDiceSlider.valueProperty().addListener(e -> {
             numOfDice = (int) numOfDiceSlider.getValue();
             numDiceLabel.setText("Number of Dice: " + numOfDice);
+            updateOptions(calcButton);
+
+        });
+
+        // if the odds button was clicked, display the chance of every total for the current options
+        oddsButton.setOnAction(e -> {
+            showOddsWindow(appStage, paddingField);
 
         });
 
@@ -599,6 +825,13 @@ public class Dice extends Application {
             gridPane.getChildren().remove(numOfDiceSlider);
             gridPane.getChildren().remove(multiDiceInfoLabel);
             gridPane.getChildren().remove(clearPerRollCheck);
+            gridPane.getChildren().remove(expressionLabel);
+            gridPane.getChildren().remove(expressionField);
+            gridPane.getChildren().remove(generatorLabel);
+            gridPane.getChildren().remove(generatorBox);
+            gridPane.getChildren().remove(seedField);
+            gridPane.getChildren().remove(memoryLabel);
+            gridPane.getChildren().remove(memoryBox);
 
             sidesSlider.setDisable(false);
             optionsButton.setDisable(false);
@@ -606,43 +839,260 @@ public class Dice extends Application {
             ignoreEven = false;
             ignoreOdd = false;
             numOfDice = 1;
+            rollExpression = null;
+            expressionError = null;
+            seedError = null;
+            randomSource = RandomSource.SPLITTABLE;
+            seed = ThreadLocalRandom.current().nextLong();
+            rollRandom = randomSource.create(seed);
 
-            appStage.setHeight(appStage.getHeight() * 8 / 15);
+            appStage.setHeight(appStage.getHeight() * 4 / 9);
 
             startingVal = 1;
-            numFaces = (int) sidesSlider.getValue();
-            numFacesLabel.setText("Number of Faces: " + numFaces);
+            maxInRange = (int) sidesSlider.getValue();
+            valueError = null;
+            updateOptions(calcButton);
 
         });
     }
 
-    // Method will set value field ("Number of Faces: ...")
-    public boolean setValueField(TextField minValField, TextField maxValField, Label numFacesLabel) {
-        int difference;
-        int max;
-        int min;
+    // Method will make a new generator of the chosen kind from the seed field, or from a new random seed if the field is empty (or the kind cannot be seeded)
+    public void setRandomSource(RandomSource source, TextField seedField) {
+        String seedText = seedField.getText().trim();
 
-        try {
-            // find the difference to determine the number of faces on the die
-            max = Integer.parseInt(maxValField.getText());
-            min = Integer.parseInt(minValField.getText());
-            difference = Math.abs(max - min) + 1;
+        if (seedText.isEmpty() || !source.isSeeded()) {
+            seed = ThreadLocalRandom.current().nextLong();
+            seedError = null;
+
+        } else {
+            try {
+                seed = Long.parseLong(seedText);
+                seedError = null;
+
+            // remember why, "Roll" stays disabled until it is fixed
+            } catch (NumberFormatException exception) {
+                seedError = "Only whole numbers from -9,223,372,036,854,775,808 to 9,223,372,036,854,775,807 are allowed.";
+                return;
+
+            }
+        }
+
+        randomSource = source;
+        rollRandom = source.create(seed);
+        seedField.setPromptText("Seed: " + seed);
 
-            numFacesLabel.setText("Number of Faces: " + difference);
+    }
 
-            // update values
-            numFaces = difference;
+    // Method will set the min and max values from their fields, then check the options
+    public void setValueField(TextField minValField, TextField maxValField, Button calcButton) {
+        try {
+            // update values, the number of faces is worked out by updateOptions
+            int min = Integer.parseInt(minValField.getText().trim());
+            int max = Integer.parseInt(maxValField.getText().trim());
             startingVal = min;
             maxInRange = max;
+            valueError = null;
 
-            return false;
-
-        // if the user entered a non numerical string (NumberFormatException) return true to indicate an error has occurred
+        // if the user entered a non numerical string, remember why until it is fixed
         } catch (NumberFormatException exception) {
-            numFacesLabel.setText("Number of Faces: ?");
-            return true;
+            valueError = "Only whole numbers are allowed. Custom values must be in the range -2,147,483,648 to 2,147,483,647. The maximum possible number of faces is 4,294,967,296";
+
+        }
+
+        updateOptions(calcButton);
+    }
+
+    // Method will check the options and make the RollSpec the next roll uses, so rolling never has to check them.
+    // The Roll button is disabled at once while they cannot be rolled, the labels follow once the options stop changing.
+    public void updateOptions(Button calcButton) {
+        if (valueError != null) {
+            optionsError = valueError;
+
+        } else {
+            // the min value may be greater than the max value, or there may be nothing left to roll after ignoring even or odd numbers
+            try {
+                optionsSpec = RollSpec.of(startingVal, maxInRange, ignoreEven, ignoreOdd, numOfDice);
+                numFaces = optionsSpec.getFaces();
+                optionsError = null;
+
+            } catch (IllegalArgumentException e) {
+                optionsError = e.getMessage();
+
+            }
+        }
+
+        calcButton.setDisable(rolling || rollError() != null);
+        optionsDelay.playFromStart();
+
+    }
+
+    // Method will show the number of faces (or the expression's range), and why Roll is disabled in its tooltip
+    public void showOptions(Label numFacesLabel, Button calcButton) {
+        if (rollExpression != null) {
+            numFacesLabel.setText("Range: " + rollExpression.getMinimum() + " to " + rollExpression.getMaximum());
+
+        } else if (expressionError != null) {
+            numFacesLabel.setText("Range: ?");
+
+        } else {
+            numFacesLabel.setText("Number of Faces: " + (optionsError == null ? String.valueOf(numFaces) : "?"));
+
+        }
+
+        String error = rollError();
+        calcButton.setTooltip(error == null ? null : new Tooltip(error));
+
+    }
+
+    // Method will return why the current options cannot be rolled, or null if they can
+    public String rollError() {
+        if (seedError != null) {
+            return "Please check your seed. " + seedError;
+
+        } else if (expressionError != null) {
+            return "Please check your dice expression. " + expressionError;
+
+        } else if (rollExpression == null && optionsError != null) {
+            return "Please check your custom values. " + optionsError;
+
+        }
+
+        return null;
+    }
+
+    // Method will compile the dice expression (an empty expression rolls the min and max values instead), and show its range in place of the number of faces
+    public void setExpression(String expression, Button calcButton) {
+        if (expression.trim().isEmpty()) {
+            rollExpression = null;
+            expressionError = null;
+
+        } else {
+            try {
+                rollExpression = DiceExpression.compile(expression);
+                expressionError = null;
 
+            // if the expression is not valid, remember why until it is fixed
+            } catch (IllegalArgumentException exception) {
+                rollExpression = null;
+                expressionError = exception.getMessage();
+
+            }
         }
+
+        updateOptions(calcButton);
+    }
+
+    // Method will display the exact chance of every total (the sum of all dice) for the current options, worked out without rolling
+    public void showOddsWindow(Stage appStage, Insets paddingField) {
+        // Roll rolls the expression rather than the range, and the odds of an expression are not worked out (as in the command line)
+        if (rollExpression != null || expressionError != null) {
+            Alert alert = new Alert(Alert.AlertType.ERROR, "The odds can only be worked out for a range, not a dice expression. Clear the dice expression to see the odds of the range.");
+            alert.showAndWait();
+            return;
+
+        }
+
+        RollSpec rollSpec = takeRollSpec();
+
+        if (rollSpec == null) {
+            return;
+
+        }
+
+        // The odds are worked out in the background, so the loading window can show while a large roll is worked out
+        Task<DistributionCalculator.Distribution> oddsTask = new Task<DistributionCalculator.Distribution>() {
+            @Override
+            protected DistributionCalculator.Distribution call() {
+                return distributionCalculator.distribution(rollSpec);
+
+            }
+        };
+        LoadingWindow.Loading loading = showLoadingWindow(oddsTask);
+
+        oddsTask.setOnSucceeded(event -> {
+            loading.close();
+            showOddsList(appStage, paddingField, rollSpec, oddsTask.getValue());
+
+        });
+
+        oddsTask.setOnCancelled(event -> {
+            loading.close();
+
+        });
+
+        // if there are too many totals or dice to work out, inform the user
+        oddsTask.setOnFailed(event -> {
+            loading.close();
+            Alert alert = new Alert(Alert.AlertType.ERROR, oddsTask.getException().getMessage());
+            alert.showAndWait();
+
+        });
+
+        Thread oddsThread = new Thread(oddsTask, "Dice odds");
+        oddsThread.setDaemon(true);
+        oddsThread.start();
+
+    }
+
+    // Method will display the chance of every total, once it has been worked out
+    public void showOddsList(Stage appStage, Insets paddingField, RollSpec rollSpec, DistributionCalculator.Distribution distribution) {
+        // Like the past results, only the visible rows are ever turned into text
+        ListView<Integer> oddsList = new ListView<>(FXCollections.observableList(new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return index;
+
+            }
+
+            @Override
+            public int size() {
+                return distribution.size();
+
+            }
+        }));
+        oddsList.setFixedCellSize(historyCellHeight);
+        oddsList.setCellFactory(list -> new ListCell<Integer>() {
+            @Override
+            protected void updateItem(Integer index, boolean empty) {
+                super.updateItem(index, empty);
+                setText(empty || index == null ? null : distribution.getTotal(index) + ".     " + String.format("%.6f%%", distribution.getChance(index) * 100));
+
+            }
+        });
+
+        Label totalLabel = new Label("Total of " + rollSpec.getDice() + (rollSpec.getDice() == 1 ? " die" : " dice"));
+        TextArea summaryField = new TextArea("Lowest Total: " + distribution.getLowest() + "\n"
+                + "Highest Total: " + distribution.getHighest() + "\n"
+                + "Average: " + String.format("%.3f", distribution.getMean()) + "\n"
+                + "Standard Deviation: " + String.format("%.3f", distribution.getStandardDeviation()) + "\n");
+        summaryField.setEditable(false);
+        summaryField.setPrefRowCount(summaryRowCount);
+        Button closeButton = new Button("Okay");
+
+        GridPane oddsPane = new GridPane();
+        oddsPane.setPadding(paddingField);
+        oddsPane.setHgap(verticalGap);
+        oddsPane.setVgap(horizontalGap);
+        oddsPane.add(totalLabel, 0, 0);
+        oddsPane.add(oddsList, 0, 1);
+        oddsPane.add(summaryField, 0, 2);
+        oddsPane.add(closeButton, 0, 3);
+
+        Stage oddsStage = new Stage();
+        oddsStage.setScene(new Scene(oddsPane));
+        oddsStage.setTitle("Odds");
+        oddsStage.initModality(Modality.WINDOW_MODAL);
+        oddsStage.initOwner(appStage);
+        oddsStage.setY(appStage.getY());
+        oddsStage.setX(appStage.getX());
+        oddsStage.setResizable(false);
+        oddsStage.show();
+
+        // Close button will close the stage
+        closeButton.setOnAction(event -> {
+            oddsStage.close();
+
+        });
     }
 
     // Method will display the about window
@@ -685,110 +1135,117 @@ public class Dice extends Application {
 
     }
 
-    // calculate will create a new random number given the constraints
-    public void calculate(TextField currValField, TextField lowestValField, TextField highestValField, ArrayList<Integer> pastVals) {
-        int lowestVal;
-        int highestVal;
-        int newVal = newVal();
+    // Method will return the snapshot of the options made when they last changed, returns null (after informing the user) if they cannot be used
+    public RollSpec takeRollSpec() {
+        if (optionsError != null) {
+            Alert alert = new Alert(Alert.AlertType.ERROR, "Please check your custom values. " + optionsError);
+            alert.showAndWait();
+            return null;
 
-        try {
-            // Min value cannot be larger than max value
-            if (startingVal > maxInRange) {
-                throw new InputMismatchException("Min value is greater than max value!");
+        }
 
-            }
+        return optionsSpec;
+    }
 
-            // if an error was detected earlier
-            if (valueMaxError || valueMinError) {
-                throw new NumberFormatException();
-            }
+    // calculate will roll a single die (or dice expression) with the roller, and publish the result
+    public void calculate(IntFunction<RollResult> roller, TextField currValField, TextField lowestValField, TextField highestValField, RollHistory pastVals) {
+        long started = System.nanoTime();
+        RollResult result = roller.apply(1);
+        publishRolls(result, currValField, lowestValField, highestValField, pastVals);
+        metrics.addRollClick();
+        metrics.recordRoll(System.nanoTime() - started);
 
-            // This prevents a null pointer exception, creates data for the first iteration
-            if (firstIteration) {
-                lowestVal = newVal;
-                highestVal = newVal;
-                firstIteration = false;
+    }
 
-            // Otherwise, use present data
-            } else {
-                lowestVal = Integer.parseInt(lowestValField.getText());
-                highestVal = Integer.parseInt(highestValField.getText());
+    // Method will roll many dice in a background task, publishing the rolls in batches so the windows stay responsive
+    // The roller rolls a batch of the given size from a snapshot of the options, so changing the options while rolling does not affect this roll
+    public void calculateInBackground(IntFunction<RollResult> roller, int count, Stage appStage, Button calcButton, TextField currValField, TextField lowestValField, TextField highestValField, RollHistory pastVals, Insets paddingField) {
+        Task<Void> rollTask = new Task<Void>() {
+            @Override
+            protected Void call() {
+                int rolled = 0;
 
-            }
+                try {
+                    while (rolled < count && !isCancelled()) {
+                        RollResult result = roller.apply(Math.min(rollBatchSize, count - rolled));
 
-            // if need be, update the highest value or lowest value variables
-            if (newVal >= highestVal) {
-                highestValField.setText(String.valueOf(newVal));
+                        // A batch rolled while cancelling is dropped, here or (if cancelled after this check) once it reaches the application thread
+                        if (isCancelled()) {
+                            break;
 
-            }
+                        }
 
-            if (newVal <= lowestVal) {
-                lowestValField.setText(String.valueOf(newVal));
+                        Platform.runLater(() -> {
+                            if (!isCancelled()) {
+                                publishRolls(result, currValField, lowestValField, highestValField, pastVals);
 
-            }
+                            }
+                        });
+                        rolled += result.getCount();
+                        updateProgress(rolled, count);
 
-            // Update the current value and add to the history
-            currValField.setText(String.valueOf(newVal));
-            pastVals.add(newVal);
+                    }
 
-        // Two possible errors. If the min value is greater than the max value, ask the user to fix the issue. Otherwise ask user to check custom values.
-        } catch (Exception e) {
-            if (startingVal > maxInRange) {
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Custom min value is greater than max value!");
-                alert.showAndWait();
-                calculationError = true;
+                // Cancelling does not stop a batch being rolled, so the generator is only free for the next roll once this returns
+                } finally {
+                    Platform.runLater(() -> {
+                        rolling = false;
+                        calcButton.setDisable(rollError() != null);
 
-            } else {
-                Alert alert = new Alert(Alert.AlertType.ERROR, "Please check your custom values. Only whole numbers are allowed. Custom values must be in the range -2,147,483,648 to 2,147,483,647. The maximum possible number of faces is 2,147,483,647");
-                alert.showAndWait();
-                calculationError = true;
+                    });
+                }
 
+                return null;
             }
-        }
-    }
-
-    // method will generate a random number with given constraints
-    public int newVal() {
-        int result = 0;
-
-        // adjust the values based on their signs for proper math
-        if (startingVal < 0 && maxInRange > 0) {
-            startingVal--;
-            numFaces++;
-
-        } else if (maxInRange < 0) {
-            startingVal--;
+        };
+
+        LoadingWindow.Loading loading = showLoadingWindow(rollTask);
+        rolling = true;
+        calcButton.setDisable(true);
+        metrics.addRollClick();
+        long started = System.nanoTime();
+
+        // Once every batch has been published, go straight to the history window
+        rollTask.setOnSucceeded(event -> {
+            loading.close();
+            metrics.recordRoll(System.nanoTime() - started);
+            showHistoryWindow(appStage, pastVals, paddingField);
 
-        }
+        });
 
-        // if statement will determine if the ignore even or ignore odd switches are checked and get a result
-        if (!ignoreEven && !ignoreOdd) {
-            result = (int) (startingVal + (Math.random() * (numFaces)));
+        // Rolls published before cancelling are kept. Roll stays disabled until the batch being rolled is finished.
+        rollTask.setOnCancelled(event -> {
+            loading.close();
 
-        } else if (ignoreOdd) {
-            do {
-                result = (int) (startingVal + (Math.random() * numFaces));
+        });
 
-            } while (result % 2 == 1);
+        rollTask.setOnFailed(event -> {
+            loading.close();
+            rollTask.getException().printStackTrace();
+            Alert alert = new Alert(Alert.AlertType.ERROR, "The dice could not be rolled!");
+            alert.showAndWait();
 
-        } else if (ignoreEven) {
-            do {
-                result = (int) (startingVal + (Math.random() * numFaces));
+        });
 
-            } while (result % 2 == 0);
-        }
+        Thread rollThread = new Thread(rollTask, "Dice roll");
+        rollThread.setDaemon(true);
+        rollThread.start();
 
-        // restore the values based on their signs
-        if (startingVal < 0 && maxInRange > 0) {
-            startingVal++;
-            numFaces--;
+    }
 
-        } else if (maxInRange < 0) {
-            startingVal++;
+    // Method will add a batch of rolls to the history, the session file, and the main window's fields
+    public void publishRolls(RollResult result, TextField currValField, TextField lowestValField, TextField highestValField, RollHistory pastVals) {
+        // Save the values first, so any rolls pastVals spills are already in the session file.
+        // Then add them to the history and to the summary shown in the main window (which is only emptied by "Reset")
+        saveToSession(result.getValues(), pastVals);
+        pastVals.appendAll(result);
+        resultStats.merge(result.getStatistics());
 
-        }
+        // Update the fields once for the whole batch
+        currValField.setText(String.valueOf(result.getLast()));
+        highestValField.setText(String.valueOf(resultStats.getHighest()));
+        lowestValField.setText(String.valueOf(resultStats.getLowest()));
 
-        return result;
     }
 
     // Launch app
@@ -0,0 +1,287 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/* The DiceCli class will:
+ * ------------------------
+ * - Roll dice from the command line, with the same RollEngine, RollSpec, dice expressions and generators as the window, but without ever starting JavaFX
+ * - Stream the rolls (or only their summary, or the exact odds) to the console or a file, a batch at a time, so any number of rolls can be made
+ *
+ * Usage:
+ * ------------------------
+ * java -jar dice.jar [options]   (with no options the window is opened instead)
+ * -n, --count N          number of rolls (default 1). With --format odds, the number of dice added together.
+ * -d, --sides N          rolls 1 to N (default 6)
+ *     --min N, --max N   rolls min to max instead
+ *     --ignore-even      never rolls even numbers
+ *     --ignore-odd       never rolls odd numbers
+ * -e, --expression TEXT  rolls dice notation (ie. 4d6kh3+2) instead of the range
+ * -g, --generator NAME   SPLITTABLE (default), XOSHIRO or SECURE
+ * -s, --seed N           seed, the same seed and generator always give the same rolls
+ * -f, --format NAME      values (one per line, default), csv, stats or odds
+ * -o, --output FILE      writes to FILE instead of the console
+ *     --serve PORT       serves rolls over HTTP on localhost instead (see DiceServer)
+ *     --metrics FILE     writes the DiceMetrics report to FILE once done
+ * -h, --help             shows this message
+ *
+ * Methods:
+ * ------------------------
+ * - main: runs the command line and exits with its status.
+ * - run: reads the arguments and rolls (or starts the server), returns 0 on success, 1 if writing failed, and 2 if the arguments were not valid.
+ * - writeRolls: rolls a batch at a time and writes each batch's values (or only adds them to the summary).
+ * - writeStats / writeOdds: write the summary of the rolls / the chance of every total.
+ */
+
+public class DiceCli {
+    // Rolls made per batch, large enough for the batch to be rolled in parallel
+    static final int BATCH_SIZE = 1 << 20;
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int MAX_ROW_SIZE = 32;
+
+    static final String USAGE = "Usage: java -jar dice.jar [options]\n"
+            + "  -n, --count N          number of rolls (default 1). With --format odds, the number of dice added together.\n"
+            + "  -d, --sides N          rolls 1 to N (default 6)\n"
+            + "      --min N, --max N   rolls min to max instead\n"
+            + "      --ignore-even      never rolls even numbers\n"
+            + "      --ignore-odd       never rolls odd numbers\n"
+            + "  -e, --expression TEXT  rolls dice notation (ie. 4d6kh3+2) instead of the range\n"
+            + "  -g, --generator NAME   SPLITTABLE (default), XOSHIRO or SECURE\n"
+            + "  -s, --seed N           seed, the same seed and generator always give the same rolls\n"
+            + "  -f, --format NAME      values (default), csv, stats or odds\n"
+            + "  -o, --output FILE      writes to FILE instead of the console\n"
+            + "      --serve PORT       serves rolls over HTTP on localhost instead (see DiceServer)\n"
+            + "      --metrics FILE     writes the metrics report to FILE once done\n"
+            + "  -h, --help             shows this message\n";
+
+    enum Format {
+        VALUES, CSV, STATS, ODDS
+    }
+
+    public static void main(String[] args) {
+        int status = run(args);
+
+        // the server keeps running on its own threads, any other run is finished
+        if (status != 0 || !Arrays.asList(args).contains("--serve")) {
+            System.exit(status);
+
+        }
+    }
+
+    // Method will read the arguments and roll, returning the exit status
+    public static int run(String[] args) {
+        long count = 1;
+        int min = 1;
+        int max = 6;
+        boolean ignoreEven = false;
+        boolean ignoreOdd = false;
+        String expression = null;
+        RandomSource source = RandomSource.SPLITTABLE;
+        long seed = ThreadLocalRandom.current().nextLong();
+        Format format = Format.VALUES;
+        Path output = null;
+        Path metricsFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+
+                switch (arg) {
+                    case "-n":
+                    case "--count":
+                        count = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "-d":
+                    case "--sides":
+                        min = 1;
+                        max = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--min":
+                        min = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--max":
+                        max = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--ignore-even":
+                        ignoreEven = true;
+                        break;
+                    case "--ignore-odd":
+                        ignoreOdd = true;
+                        break;
+                    case "-e":
+                    case "--expression":
+                        expression = value(args, ++i, arg);
+                        break;
+                    case "-g":
+                    case "--generator":
+                        source = RandomSource.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                        break;
+                    case "-s":
+                    case "--seed":
+                        seed = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "-f":
+                    case "--format":
+                        format = Format.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                        break;
+                    case "-o":
+                    case "--output":
+                        output = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--metrics":
+                        metricsFile = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--serve":
+                        DiceServer server = DiceServer.start(Integer.parseInt(value(args, ++i, arg)));
+                        System.out.println("Serving rolls on http://localhost:" + server.getPort() + "/ (stop with Ctrl+C)");
+                        return 0;
+                    case "-h":
+                    case "--help":
+                        System.out.print(USAGE);
+                        return 0;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+
+            if (count < 1) {
+                throw new IllegalArgumentException("At least one die must be rolled!");
+
+            }
+
+            // Check everything before anything is written
+            DiceExpression compiled = expression == null ? null : DiceExpression.compile(expression);
+            RollSpec spec = RollSpec.of(min, max, ignoreEven, ignoreOdd, (int) Math.min(count, Integer.MAX_VALUE));
+
+            if (format == Format.ODDS && compiled != null) {
+                throw new IllegalArgumentException("The odds can only be worked out for a range, not a dice expression.");
+
+            }
+
+            try (WritableByteChannel channel = output == null
+                    ? new FileOutputStream(FileDescriptor.out).getChannel()
+                    : FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+                if (format == Format.ODDS) {
+                    writeOdds(channel, buffer, new DistributionCalculator().distribution(spec));
+
+                } else {
+                    RollStatistics statistics = writeRolls(channel, buffer, format, spec, compiled, count, source.create(seed));
+
+                    if (format == Format.STATS) {
+                        writeStats(channel, buffer, statistics);
+
+                    }
+                }
+
+                HistoryExporter.flush(channel, buffer);
+
+            }
+
+            if (metricsFile != null) {
+                DiceMetrics.get().writeTo(metricsFile);
+
+            }
+
+            return 0;
+
+        // NumberFormatException is an IllegalArgumentException
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            return 2;
+
+        } catch (IOException e) {
+            System.err.println("Could not write the rolls or start the server: " + e.getMessage());
+            return 1;
+
+        }
+    }
+
+    // Method will return the value following an option
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value.");
+
+        }
+
+        return args[index];
+    }
+
+    // Method will roll count values a batch at a time, writing each batch unless only the summary is wanted
+    static RollStatistics writeRolls(WritableByteChannel channel, ByteBuffer buffer, Format format, RollSpec spec, DiceExpression expression, long count, RollRandom random) throws IOException {
+        RollEngine rollEngine = new RollEngine();
+        RollStatistics statistics = new RollStatistics();
+
+        if (format == Format.CSV) {
+            HistoryExporter.putAscii(channel, buffer, "roll,value\n");
+
+        }
+
+        for (long rolled = 0; rolled < count; ) {
+            int batchSize = (int) Math.min(BATCH_SIZE, count - rolled);
+            RollResult result = expression == null ? rollEngine.roll(spec, batchSize, random) : expression.roll(batchSize, random);
+            statistics.merge(result.getStatistics());
+
+            if (format != Format.STATS) {
+                int[] values = result.getValues();
+
+                for (int i = 0; i < values.length; i++) {
+                    if (buffer.remaining() < MAX_ROW_SIZE) {
+                        HistoryExporter.flush(channel, buffer);
+
+                    }
+
+                    if (format == Format.CSV) {
+                        HistoryExporter.putNumber(buffer, rolled + i + 1);
+                        buffer.put((byte) ',');
+
+                    }
+
+                    HistoryExporter.putNumber(buffer, values[i]);
+                    buffer.put((byte) '\n');
+
+                }
+            }
+
+            rolled += batchSize;
+
+        }
+
+        return statistics;
+    }
+
+    // Method will write the summary of the rolls
+    static void writeStats(WritableByteChannel channel, ByteBuffer buffer, RollStatistics statistics) throws IOException {
+        HistoryExporter.putAscii(channel, buffer, "Rolls: " + statistics.getCount() + "\n"
+                + "Lowest Value: " + statistics.getLowest() + "\n"
+                + "Highest Value: " + statistics.getHighest() + "\n"
+                + "Sum: " + statistics.getSum() + "\n"
+                + "Average: " + String.format(Locale.ROOT, "%.3f", statistics.getMean()) + "\n"
+                + "Standard Deviation: " + String.format(Locale.ROOT, "%.3f", statistics.getStandardDeviation()) + "\n");
+
+    }
+
+    // Method will write "total,chance" for every total, followed by nothing else so the output can be read as CSV
+    static void writeOdds(WritableByteChannel channel, ByteBuffer buffer, DistributionCalculator.Distribution distribution) throws IOException {
+        HistoryExporter.putAscii(channel, buffer, "total,chance\n");
+
+        for (int i = 0; i < distribution.size(); i++) {
+            HistoryExporter.putAscii(channel, buffer, distribution.getTotal(i) + "," + distribution.getChance(i) + "\n");
+
+        }
+    }
+}
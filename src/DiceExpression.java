@@ -0,0 +1,480 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntSupplier;
+
+/* The DiceExpression class will:
+ * ------------------------
+ * - Read dice notation such as "4d6kh3+2", "2d20kl1", "3d6!", "1d8+1d6+3" or "d%" and compile it into a plan that can be rolled over and over
+ * - Keep the compiled plans of the MAX_CACHED_EXPRESSIONS most recently used expressions, so rolling the same expression again never reads the text again
+ *
+ * Notation:
+ * ------------------------
+ * - NdM: rolls N dice with M faces (1 to M). N may be left out for one die, and "d%" is a 100 faced die.
+ * - khK / klK: keeps the K highest / lowest dice of the pool ("kK" is the same as "khK").
+ * - dhK / dlK: drops the K highest / lowest dice of the pool ("dK" is the same as "dlK").
+ * - !: explodes, a die that rolls its highest face is rolled again and added (up to MAX_EXPLOSIONS times).
+ * - Pools and whole numbers are added or subtracted with + and -.
+ *
+ * Methods:
+ * ------------------------
+ * - compile: returns the plan for an expression, compiling and caching it the first time (or once it has dropped out of the cache). Throws an IllegalArgumentException if the expression is not valid.
+ * - evaluate: rolls the expression once and returns the total.
+ * - roll: rolls the expression a number of times and returns the totals as a RollResult, from the given generator or the thread's own.
+ * - getMinimum / getMaximum: return the lowest and highest possible totals.
+ */
+
+public final class DiceExpression {
+    // Limits that keep every possible total within an int
+    static final int MAX_DICE_PER_POOL = 10000;
+    static final int MAX_EXPLOSIONS = 100;
+    static final int MAX_CACHED_EXPRESSIONS = 1024;
+
+    // The compiled plans in order of use, the least recently used is dropped once the cache is full. Only used while holding its lock.
+    private static final Map<String, DiceExpression> CACHE = new LinkedHashMap<String, DiceExpression>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DiceExpression> eldest) {
+            return size() > MAX_CACHED_EXPRESSIONS;
+
+        }
+    };
+
+    // Each thread's dice of the pool being kept or dropped, reused by every roll so keeping never allocates
+    private static final ThreadLocal<long[]> POOL_DICE = ThreadLocal.withInitial(() -> new long[16]);
+
+    private final String expression;
+    private final Term[] terms;
+    private final long minimum;
+    private final long maximum;
+
+    private DiceExpression(String expression, Term[] terms) {
+        this.expression = expression;
+        this.terms = terms;
+
+        long lowest = 0;
+        long highest = 0;
+
+        for (Term term : terms) {
+            lowest += term.sign > 0 ? term.minimum() : -term.maximum();
+            highest += term.sign > 0 ? term.maximum() : -term.minimum();
+
+        }
+
+        // Every total must fit in the history
+        if (lowest < Integer.MIN_VALUE || highest > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("\"" + expression + "\" can roll totals outside of -2,147,483,648 to 2,147,483,647!");
+
+        }
+
+        this.minimum = lowest;
+        this.maximum = highest;
+
+    }
+
+    // Method will return the compiled plan for the expression, only reading the text the first time it is seen
+    public static DiceExpression compile(String expression) {
+        DiceExpression compiled;
+
+        synchronized (CACHE) {
+            compiled = CACHE.get(expression);
+
+        }
+
+        if (compiled != null) {
+            return compiled;
+
+        }
+
+        // read outside the lock, so a long expression does not hold up other threads (two threads may both read it, which is harmless)
+        compiled = new Parser(expression).parse();
+
+        synchronized (CACHE) {
+            CACHE.put(expression, compiled);
+
+        }
+
+        return compiled;
+    }
+
+    // Method will roll the expression once
+    public int evaluate() {
+        return evaluate(ThreadLocalRandom.current()::nextInt);
+
+    }
+
+    // Method will roll the expression once, using random for uniformly distributed 32 bit numbers
+    public int evaluate(IntSupplier random) {
+        long total = 0;
+
+        for (Term term : terms) {
+            total += term.sign * term.roll(random);
+
+        }
+
+        return (int) total;
+    }
+
+    // Method will roll the expression count times and summarize the totals
+    public RollResult roll(int count) {
+        return roll(count, ThreadLocalRandom.current()::nextInt);
+
+    }
+
+    // Method will roll the expression count times using random for uniformly distributed 32 bit numbers, and summarize the totals
+    public RollResult roll(int count, IntSupplier random) {
+        RollEngine.checkCount(count);
+        long started = System.nanoTime();
+
+        int[] values = new int[count];
+        RollStatistics statistics = new RollStatistics();
+
+        for (int i = 0; i < count; i++) {
+            values[i] = evaluate(random);
+
+        }
+
+        statistics.addAll(values, 0, count);
+
+        DiceMetrics metrics = DiceMetrics.get();
+        metrics.addRolls(count);
+        metrics.recordBatch(System.nanoTime() - started);
+
+        return new RollResult(values, statistics);
+    }
+
+    public int getMinimum() {
+        return (int) minimum;
+
+    }
+
+    public int getMaximum() {
+        return (int) maximum;
+
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+
+    }
+
+    // One added or subtracted part of an expression
+    private abstract static class Term {
+        final int sign;
+
+        Term(int sign) {
+            this.sign = sign;
+
+        }
+
+        abstract long roll(IntSupplier random);
+
+        abstract long minimum();
+
+        abstract long maximum();
+    }
+
+    // A whole number, such as the 2 in "4d6kh3+2"
+    private static final class Constant extends Term {
+        private final long value;
+
+        Constant(int sign, long value) {
+            super(sign);
+            this.value = value;
+
+        }
+
+        @Override
+        long roll(IntSupplier random) {
+            return value;
+
+        }
+
+        @Override
+        long minimum() {
+            return value;
+
+        }
+
+        @Override
+        long maximum() {
+            return value;
+
+        }
+    }
+
+    // A pool of identical dice, such as the 4d6kh3 in "4d6kh3+2"
+    private static final class Pool extends Term {
+        private final int count;
+        private final int sides;
+        private final boolean explode;
+
+        // The dice kept after sorting the pool from lowest to highest are keepFrom (inclusive) to keepTo (exclusive)
+        private final int keepFrom;
+        private final int keepTo;
+
+        Pool(int sign, int count, int sides, boolean explode, int keepFrom, int keepTo) {
+            super(sign);
+            this.count = count;
+            this.sides = sides;
+            this.explode = explode;
+            this.keepFrom = keepFrom;
+            this.keepTo = keepTo;
+
+        }
+
+        @Override
+        long roll(IntSupplier random) {
+            // Without keeping or dropping, there is no need to remember each die
+            if (keepFrom == 0 && keepTo == count) {
+                long total = 0;
+
+                for (int i = 0; i < count; i++) {
+                    total += rollDie(random);
+
+                }
+
+                return total;
+            }
+
+            long[] dice = POOL_DICE.get();
+
+            if (dice.length < count) {
+                dice = new long[Math.max(count, dice.length * 2)];
+                POOL_DICE.set(dice);
+
+            }
+
+            for (int i = 0; i < count; i++) {
+                dice[i] = rollDie(random);
+
+            }
+
+            Arrays.sort(dice, 0, count);
+            long total = 0;
+
+            for (int i = keepFrom; i < keepTo; i++) {
+                total += dice[i];
+
+            }
+
+            return total;
+        }
+
+        // Method will roll one die, rolling again while it explodes
+        private long rollDie(IntSupplier random) {
+            long face = RollEngine.nextBounded(random, sides) + 1;
+            long total = face;
+
+            for (int explosions = 0; explode && face == sides && explosions < MAX_EXPLOSIONS; explosions++) {
+                face = RollEngine.nextBounded(random, sides) + 1;
+                total += face;
+
+            }
+
+            return total;
+        }
+
+        @Override
+        long minimum() {
+            return keepTo - keepFrom;
+
+        }
+
+        @Override
+        long maximum() {
+            return (long) (keepTo - keepFrom) * sides * (explode ? MAX_EXPLOSIONS + 1 : 1);
+
+        }
+    }
+
+    // Reads an expression, one character at a time
+    private static final class Parser {
+        private final String expression;
+        private final String text;
+        private int position = 0;
+
+        Parser(String expression) {
+            this.expression = expression;
+            this.text = expression.replaceAll("\\s+", "").toLowerCase();
+
+        }
+
+        DiceExpression parse() {
+            if (text.isEmpty()) {
+                throw error("Expression is empty");
+
+            }
+
+            List<Term> terms = new ArrayList<>();
+            int sign = 1;
+
+            // a leading sign is allowed, ie. "-1d4"
+            if (peek() == '+' || peek() == '-') {
+                sign = text.charAt(position++) == '-' ? -1 : 1;
+
+            }
+
+            terms.add(parseTerm(sign));
+
+            while (position < text.length()) {
+                char operator = text.charAt(position++);
+
+                if (operator != '+' && operator != '-') {
+                    throw error("Expected + or -");
+
+                }
+
+                terms.add(parseTerm(operator == '-' ? -1 : 1));
+
+            }
+
+            return new DiceExpression(expression, terms.toArray(new Term[0]));
+        }
+
+        // term := number | [number] "d" (number | "%") modifiers
+        private Term parseTerm(int sign) {
+            int start = position;
+            long number = peekDigit() ? parseNumber() : -1;
+
+            if (peek() != 'd') {
+                if (number < 0) {
+                    throw error("Expected a number or a die");
+
+                }
+
+                return new Constant(sign, number);
+            }
+
+            position++;
+            int count = number < 0 ? 1 : (int) Math.min(number, Integer.MAX_VALUE);
+            int sides;
+
+            if (peek() == '%') {
+                position++;
+                sides = 100;
+
+            } else if (peekDigit()) {
+                sides = (int) Math.min(parseNumber(), Integer.MAX_VALUE);
+
+            } else {
+                throw error("Expected the number of faces");
+
+            }
+
+            if (count < 1 || count > MAX_DICE_PER_POOL) {
+                throw new IllegalArgumentException("A pool must have 1 to " + MAX_DICE_PER_POOL + " dice (at " + (start + 1) + ")");
+
+            }
+
+            if (sides < 1) {
+                throw new IllegalArgumentException("A die must have at least one face (at " + (start + 1) + ")");
+
+            }
+
+            boolean explode = false;
+            int keepFrom = 0;
+            int keepTo = count;
+
+            // modifiers may come in any order, but only one keep or drop is allowed
+            boolean kept = false;
+
+            while (position < text.length() && peek() != '+' && peek() != '-') {
+                if (peek() == '!') {
+                    position++;
+
+                    if (sides == 1) {
+                        throw error("A one faced die cannot explode");
+
+                    }
+
+                    explode = true;
+                    continue;
+                }
+
+                if (kept) {
+                    throw error("Only one keep or drop is allowed per pool");
+
+                }
+
+                char action = text.charAt(position++);
+                // "kK" keeps the highest and "dK" drops the lowest, as in most dice notation
+                char end = peek() == 'h' || peek() == 'l' ? text.charAt(position++) : (action == 'd' ? 'l' : 'h');
+
+                if ((action != 'k' && action != 'd') || !peekDigit()) {
+                    throw error("Expected kh, kl, dh, or dl followed by a number");
+
+                }
+
+                long amount = parseNumber();
+
+                // keeping none, or dropping every die, would leave a pool that always totals 0
+                if (amount > count || (action == 'k' && amount == 0) || (action == 'd' && amount == count)) {
+                    throw error("Cannot " + (action == 'k' ? "keep " : "drop ") + amount + " of " + count + " dice");
+
+                }
+
+                int n = (int) amount;
+
+                // the pool is sorted from lowest to highest
+                if (action == 'k' && end == 'h') {
+                    keepFrom = count - n;
+
+                } else if (action == 'k') {
+                    keepTo = n;
+
+                } else if (end == 'h') {
+                    keepTo = count - n;
+
+                } else {
+                    keepFrom = n;
+
+                }
+
+                kept = true;
+
+            }
+
+            return new Pool(sign, count, sides, explode, keepFrom, keepTo);
+        }
+
+        private long parseNumber() {
+            long number = 0;
+
+            while (peekDigit()) {
+                number = number * 10 + (text.charAt(position++) - '0');
+
+                if (number > Integer.MAX_VALUE) {
+                    throw error("Number is too large");
+
+                }
+            }
+
+            return number;
+        }
+
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : '\0';
+
+        }
+
+        private boolean peekDigit() {
+            return peek() >= '0' && peek() <= '9';
+
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at character " + (position + 1) + " of \"" + expression + "\"");
+
+        }
+    }
+}
@@ -0,0 +1,35 @@
+// =================================
+// Dice Program
+// =================================
+
+import javafx.application.Application;
+
+/* The DiceLauncher class will:
+ * ------------------------
+ * - Be the program's entry point, choosing between the window and the command line
+ * - Open the window when there are no arguments, otherwise hand the arguments to DiceCli
+ *
+ * The Dice class is only loaded when the window is opened, so the command line never starts (or even needs) JavaFX.
+ *
+ * Methods:
+ * ------------------------
+ * - main: opens the window or runs the command line.
+ * - isCommandLine: returns true if the arguments ask for the command line.
+ */
+
+public class DiceLauncher {
+    public static void main(String[] args) {
+        if (isCommandLine(args)) {
+            DiceCli.main(args);
+
+        } else {
+            Application.launch(Dice.class, args);
+
+        }
+    }
+
+    public static boolean isCommandLine(String[] args) {
+        return args.length > 0;
+
+    }
+}
@@ -0,0 +1,331 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* The DiceMetrics class will:
+ * ------------------------
+ * - Count what the program does (rolls, Roll clicks, rejected draws, history opens, exports, bytes exported, HTTP requests)
+ * - Keep latency histograms of the slow paths (a Roll click, a rolled batch, opening the history, an export, an HTTP request)
+ * - Write everything to a file, or expose it over JMX
+ *
+ * Every counter is a LongAdder and every histogram bucket an atomic long, so recording is a few uncontended adds from any thread.
+ * Histograms keep 8 buckets per power of two (like HdrHistogram with 1 significant digit), so percentiles are within 12.5% of the real value.
+ *
+ * Methods:
+ * ------------------------
+ * - get: returns the one DiceMetrics of the program.
+ * - register: exposes the metrics over JMX as "dice:type=Metrics", once.
+ * - addRolls, addRollClick, addRejectedDraw, addHistoryOpen, addExport, addRequest: count what happened.
+ * - recordRoll, recordBatch, recordHistoryOpen, recordExport, recordRequest: record how long something took, in nanoseconds.
+ * - writeTo: writes the report to a file.
+ */
+
+public class DiceMetrics implements DiceMetricsMXBean {
+    static final String OBJECT_NAME = "dice:type=Metrics";
+
+    private static final DiceMetrics INSTANCE = new DiceMetrics();
+
+    private final LongAdder rolls = new LongAdder();
+    private final LongAdder rollClicks = new LongAdder();
+    private final LongAdder rejectedDraws = new LongAdder();
+    private final LongAdder historyOpens = new LongAdder();
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder bytesExported = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    private final Histogram rollLatency = new Histogram("roll");
+    private final Histogram batchLatency = new Histogram("batch");
+    private final Histogram historyLatency = new Histogram("history");
+    private final Histogram exportLatency = new Histogram("export");
+    private final Histogram requestLatency = new Histogram("request");
+    private final Histogram[] histograms = {rollLatency, batchLatency, historyLatency, exportLatency, requestLatency};
+
+    private boolean registered = false;
+
+    public static DiceMetrics get() {
+        return INSTANCE;
+
+    }
+
+    // Method will expose the metrics over JMX, only the first call does anything
+    public synchronized void register() {
+        if (registered) {
+            return;
+
+        }
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+            registered = true;
+
+        // metrics are still recorded and can be written to a file without JMX
+        } catch (JMException e) {
+            System.err.println("Could not register " + OBJECT_NAME + ": " + e.getMessage());
+
+        }
+    }
+
+    public void addRolls(long count) {
+        rolls.add(count);
+
+    }
+
+    public void addRollClick() {
+        rollClicks.increment();
+
+    }
+
+    public void addRejectedDraw() {
+        rejectedDraws.increment();
+
+    }
+
+    public void addHistoryOpen() {
+        historyOpens.increment();
+
+    }
+
+    public void addExport(long bytes) {
+        exports.increment();
+        bytesExported.add(bytes);
+
+    }
+
+    public void addRequest() {
+        requests.increment();
+
+    }
+
+    public void recordRoll(long nanos) {
+        rollLatency.record(nanos);
+
+    }
+
+    public void recordBatch(long nanos) {
+        batchLatency.record(nanos);
+
+    }
+
+    public void recordHistoryOpen(long nanos) {
+        historyLatency.record(nanos);
+
+    }
+
+    public void recordExport(long nanos) {
+        exportLatency.record(nanos);
+
+    }
+
+    public void recordRequest(long nanos) {
+        requestLatency.record(nanos);
+
+    }
+
+    @Override
+    public long getRolls() {
+        return rolls.sum();
+
+    }
+
+    @Override
+    public long getRollClicks() {
+        return rollClicks.sum();
+
+    }
+
+    @Override
+    public long getRejectedDraws() {
+        return rejectedDraws.sum();
+
+    }
+
+    @Override
+    public long getHistoryOpens() {
+        return historyOpens.sum();
+
+    }
+
+    @Override
+    public long getExports() {
+        return exports.sum();
+
+    }
+
+    @Override
+    public long getBytesExported() {
+        return bytesExported.sum();
+
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+
+    }
+
+    @Override
+    public double getLatencyPercentileMillis(String histogram, double percentile) {
+        for (Histogram each : histograms) {
+            if (each.name.equals(histogram)) {
+                return each.percentile(percentile) / 1e6;
+
+            }
+        }
+
+        throw new IllegalArgumentException("There is no " + histogram + " histogram");
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("rolls ").append(getRolls()).append('\n')
+                .append("rollClicks ").append(getRollClicks()).append('\n')
+                .append("rejectedDraws ").append(getRejectedDraws()).append('\n')
+                .append("historyOpens ").append(getHistoryOpens()).append('\n')
+                .append("exports ").append(getExports()).append('\n')
+                .append("bytesExported ").append(getBytesExported()).append('\n')
+                .append("requests ").append(getRequests()).append('\n')
+                .append('\n')
+                .append(String.format(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s %10s %10s%n", "latency ms", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+
+        for (Histogram histogram : histograms) {
+            long count = histogram.count();
+            report.append(String.format(Locale.ROOT, "%-10s %10d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f%n", histogram.name, count,
+                    count == 0 ? 0.0 : histogram.sum.sum() / 1e6 / count, histogram.percentile(50) / 1e6, histogram.percentile(90) / 1e6,
+                    histogram.percentile(99) / 1e6, histogram.percentile(99.9) / 1e6, histogram.max.get() / 1e6));
+
+        }
+
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        rolls.reset();
+        rollClicks.reset();
+        rejectedDraws.reset();
+        historyOpens.reset();
+        exports.reset();
+        bytesExported.reset();
+        requests.reset();
+
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+
+        }
+    }
+
+    // Method will write the report to a file, replacing it
+    public void writeTo(Path file) throws IOException {
+        Files.write(file, getReport().getBytes(StandardCharsets.UTF_8));
+
+    }
+
+    // A latency histogram with 8 buckets per power of two, from 1 nanosecond to 2^63
+    static final class Histogram {
+        static final int SUB_BUCKET_BITS = 3;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        final String name;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram(String name) {
+            this.name = name;
+
+        }
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts.incrementAndGet(bucketOf(value));
+            sum.add(value);
+            max.accumulate(value);
+
+        }
+
+        // values below SUB_BUCKETS have a bucket each, larger ones share a bucket with values that have the same top 4 bits
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+
+            }
+
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        }
+
+        // the smallest value that falls in the bucket
+        static long lowestOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+
+            }
+
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        }
+
+        long count() {
+            long count = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts.get(i);
+
+            }
+
+            return count;
+        }
+
+        // Method will return the highest value of the bucket holding the percentile, never more than the largest recorded value
+        long percentile(double percentile) {
+            long count = count();
+
+            if (count == 0) {
+                return 0;
+
+            }
+
+            long wanted = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+
+                if (seen >= wanted) {
+                    long highest = i + 1 < BUCKETS ? lowestOf(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(highest, max.get());
+
+                }
+            }
+
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+
+            }
+
+            sum.reset();
+            max.reset();
+
+        }
+    }
+}
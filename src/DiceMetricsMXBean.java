@@ -0,0 +1,37 @@
+// =================================
+// Dice Program
+// =================================
+
+/* The DiceMetricsMXBean interface will:
+ * ------------------------
+ * - Expose the DiceMetrics over JMX (ie. to jconsole or a monitoring agent), as "dice:type=Metrics"
+ *
+ * Methods:
+ * ------------------------
+ * - getRolls, getRollClicks, getRejectedDraws, getHistoryOpens, getExports, getBytesExported, getRequests: return the counters.
+ * - getLatencyPercentileMillis: returns a percentile (0 to 100) of a latency histogram, in milliseconds.
+ * - getReport: returns every counter and histogram as text.
+ * - reset: sets every counter and histogram back to zero.
+ */
+
+public interface DiceMetricsMXBean {
+    long getRolls();
+
+    long getRollClicks();
+
+    long getRejectedDraws();
+
+    long getHistoryOpens();
+
+    long getExports();
+
+    long getBytesExported();
+
+    long getRequests();
+
+    double getLatencyPercentileMillis(String histogram, double percentile);
+
+    String getReport();
+
+    void reset();
+}
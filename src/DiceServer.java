@@ -0,0 +1,454 @@
+// =================================
+// Dice Program
+// =================================
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/* The DiceServer class will:
+ * ------------------------
+ * - Serve rolls over HTTP on this computer only (localhost), with the same RollSpec, RollEngine, dice expressions and generators as the window
+ * - Answer many rolls per request, and many requests per call (POST /batch), so a client is not slowed down by one request per roll
+ * - Handle each request on a virtual thread when running on Java 21 or later, and on a fixed pool of threads otherwise
+ *
+ * Calls (every answer is JSON):
+ * ------------------------
+ * - GET /roll?min=1&max=6&count=10: rolls count values. Also takes ignoreEven, ignoreOdd, expression (instead of the range), generator, seed,
+ *   and values=false to only answer with the summary.
+ * - GET /odds?min=1&max=6&dice=3: the exact chance of every total of the dice. Also takes ignoreEven and ignoreOdd.
+ *   Odds that would take more than DistributionCalculator.MAX_WORK steps to work out are answered with 413, before any work is done.
+ * - POST /batch: the body has one /roll or /odds call per line (ie. "/roll?max=20&count=100"), the answer is a JSON array with one answer per line.
+ *   A batch answers at most MAX_VALUES_PER_BATCH values (rolls and chances) in all, a larger batch is answered with 413 and nothing else.
+ *   So is a batch whose odds would take more than DistributionCalculator.MAX_WORK steps in all.
+ * - GET /metrics: the DiceMetrics report, as text.
+ *
+ * Methods:
+ * ------------------------
+ * - start: starts serving on the given port, returns the running server.
+ * - stop: stops serving.
+ * - answer: returns the JSON answer to one call, throws an IllegalArgumentException if the call is not valid.
+ */
+
+public class DiceServer {
+    // The most values one call can roll, the most lines (calls) in one batch, and the most values (rolls and chances) in all of a batch's answers
+    static final int MAX_ROLLS_PER_CALL = 1 << 20;
+    static final int MAX_CALLS_PER_BATCH = 10000;
+    static final int MAX_VALUES_PER_BATCH = 1 << 22;
+    static final int MAX_BODY_SIZE = 1 << 20;
+
+    private final RollEngine rollEngine = new RollEngine();
+    private final DistributionCalculator distributionCalculator = new DistributionCalculator();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private DiceServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+
+    }
+
+    // Method will start serving on the given port of localhost (0 picks any free port)
+    public static DiceServer start(int port) throws IOException {
+        // Without TCP_NODELAY, small answers on a kept alive connection wait on the client's delayed acknowledgement (about 40 ms each).
+        // The JDK reads this setting once, when the first server is made.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        }
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = newExecutor();
+        DiceServer diceServer = new DiceServer(server, executor);
+        DiceMetrics.get().register();
+
+        server.createContext("/", diceServer::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        return diceServer;
+    }
+
+    // Method will use a virtual thread per request where the JDK has them (Java 21), otherwise one thread per core
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+
+    }
+
+    // Method will answer one HTTP request
+    private void handle(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        int status = 200;
+        String contentType = "application/json";
+        String body;
+
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+
+            if (path.equals("/batch")) {
+                if (!method.equals("POST")) {
+                    throw new UnsupportedOperationException("/batch must be called with POST");
+
+                }
+
+                body = answerBatch(readBody(exchange.getRequestBody()));
+
+            } else if (!method.equals("GET")) {
+                throw new UnsupportedOperationException(path + " must be called with GET");
+
+            } else if (path.equals("/metrics")) {
+                contentType = "text/plain";
+                body = DiceMetrics.get().getReport();
+
+            } else {
+                body = answer(path, exchange.getRequestURI().getRawQuery());
+
+            }
+
+        } catch (UnsupportedOperationException e) {
+            status = 405;
+            body = error(e.getMessage());
+
+        } catch (IllegalArgumentException e) {
+            status = e instanceof NoSuchCallException ? 404 : e instanceof TooLargeException ? 413 : 400;
+            body = error(e.getMessage());
+
+        // anything else is a bug, but the client still gets an answer rather than waiting on the connection
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            status = 500;
+            body = error("The call could not be answered: " + e);
+
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+
+        }
+
+        DiceMetrics metrics = DiceMetrics.get();
+        metrics.addRequest();
+        metrics.recordRequest(System.nanoTime() - started);
+    }
+
+    // Method will answer every line of a batch, in order
+    private String answerBatch(String body) {
+        StringBuilder json = new StringBuilder("[");
+        int calls = 0;
+        long values = 0;
+        long work = 0;
+
+        for (String line : body.split("\n")) {
+            line = line.trim();
+
+            if (line.isEmpty()) {
+                continue;
+
+            }
+
+            if (++calls > MAX_CALLS_PER_BATCH) {
+                throw new IllegalArgumentException("A batch can have at most " + MAX_CALLS_PER_BATCH + " calls");
+
+            }
+
+            int question = line.indexOf('?');
+            String path = question < 0 ? line : line.substring(0, question);
+            String query = question < 0 ? null : line.substring(question + 1);
+
+            // checked before answering, so a batch that is too large is never built
+            values += countValues(path, query);
+
+            if (values > MAX_VALUES_PER_BATCH) {
+                throw new TooLargeException("A batch can answer at most " + MAX_VALUES_PER_BATCH + " values (rolls and chances) in all");
+
+            }
+
+            // and so is a batch whose odds would keep the thread busy for too long
+            long callWork = countWork(path, query);
+
+            if (callWork > DistributionCalculator.MAX_WORK - work) {
+                throw new TooLargeException("A batch can work out at most " + DistributionCalculator.MAX_WORK + " steps of odds in all");
+
+            }
+
+            work += callWork;
+
+            // one bad line does not spoil the rest of the batch
+            String answer;
+
+            try {
+                answer = answer(path, query);
+
+            } catch (IllegalArgumentException e) {
+                answer = error(e.getMessage());
+
+            }
+
+            json.append(calls > 1 ? "," : "").append(answer);
+
+        }
+
+        return json.append(']').toString();
+    }
+
+    // Method will return how many values (rolls or chances) the answer to one /roll or /odds call holds, 0 if the call is not valid
+    private static long countValues(String path, String query) {
+        try {
+            Map<String, String> parameters = parseQuery(query);
+
+            switch (path) {
+                case "/roll":
+                    int count = intParameter(parameters, "count", 1);
+                    return count < 1 || count > MAX_ROLLS_PER_CALL ? 0 : "false".equals(parameters.get("values")) ? 1 : count;
+                case "/odds":
+                    long totals = DistributionCalculator.countTotals(rollSpec(parameters, intParameter(parameters, "dice", 1)));
+                    return totals > DistributionCalculator.MAX_TOTALS ? 0 : totals;
+                default:
+                    return 0;
+            }
+
+        // answering the call finds the same problem, and answers it with a short error
+        } catch (IllegalArgumentException e) {
+            return 0;
+
+        }
+    }
+
+    // Method will return about how many steps working out the odds of one call takes (see DistributionCalculator.estimateWork),
+    // 0 for a /roll call or a call that is not valid
+    private static long countWork(String path, String query) {
+        if (!path.equals("/odds")) {
+            return 0;
+
+        }
+
+        try {
+            Map<String, String> parameters = parseQuery(query);
+            return DistributionCalculator.estimateWork(rollSpec(parameters, intParameter(parameters, "dice", 1)));
+
+        // answering the call finds the same problem, and answers it with a short error
+        } catch (IllegalArgumentException e) {
+            return 0;
+
+        }
+    }
+
+    // Method will return the JSON answer to one /roll or /odds call
+    public String answer(String path, String query) {
+        Map<String, String> parameters = parseQuery(query);
+
+        switch (path) {
+            case "/roll":
+                return answerRoll(parameters);
+            case "/odds":
+                return answerOdds(parameters);
+            default:
+                throw new NoSuchCallException("There is no " + path + " call, only /roll, /odds, /batch and /metrics");
+        }
+    }
+
+    private String answerRoll(Map<String, String> parameters) {
+        int count = intParameter(parameters, "count", 1);
+
+        if (count < 1 || count > MAX_ROLLS_PER_CALL) {
+            throw new IllegalArgumentException("count must be from 1 to " + MAX_ROLLS_PER_CALL);
+
+        }
+
+        // a seeded call always rolls the same values
+        RandomSource source = parameters.containsKey("generator")
+                ? RandomSource.valueOf(parameters.get("generator").toUpperCase(Locale.ROOT)) : RandomSource.SPLITTABLE;
+        long seed = parameters.containsKey("seed") ? Long.parseLong(parameters.get("seed")) : ThreadLocalRandom.current().nextLong();
+        RollRandom random = source.create(seed);
+        RollResult result;
+
+        if (parameters.containsKey("expression")) {
+            result = DiceExpression.compile(parameters.get("expression")).roll(count, random);
+
+        } else {
+            result = rollEngine.roll(rollSpec(parameters, 1), count, random);
+
+        }
+
+        RollStatistics statistics = result.getStatistics();
+        StringBuilder json = new StringBuilder(count * 4 + 128);
+        json.append("{\"count\":").append(statistics.getCount())
+                .append(",\"lowest\":").append(statistics.getLowest())
+                .append(",\"highest\":").append(statistics.getHighest())
+                .append(",\"sum\":").append(statistics.getSum())
+                .append(",\"mean\":").append(statistics.getMean())
+                .append(",\"standardDeviation\":").append(statistics.getStandardDeviation());
+
+        if (!"false".equals(parameters.get("values"))) {
+            json.append(",\"values\":[");
+            int[] values = result.getValues();
+
+            for (int i = 0; i < values.length; i++) {
+                json.append(i > 0 ? "," : "").append(values[i]);
+
+            }
+
+            json.append(']');
+
+        }
+
+        return json.append('}').toString();
+    }
+
+    private String answerOdds(Map<String, String> parameters) {
+        RollSpec spec = rollSpec(parameters, intParameter(parameters, "dice", 1));
+        long work = DistributionCalculator.estimateWork(spec);
+
+        // refused with 413 before anything is worked out
+        if (work > DistributionCalculator.MAX_WORK) {
+            throw new TooLargeException("The odds of " + spec.getDice() + " dice would take about " + work + " steps to work out, at most "
+                    + DistributionCalculator.MAX_WORK + " are allowed");
+
+        }
+
+        DistributionCalculator.Distribution distribution = distributionCalculator.distribution(spec);
+        StringBuilder json = new StringBuilder(distribution.size() * 24 + 128);
+        json.append("{\"lowest\":").append(distribution.getLowest())
+                .append(",\"highest\":").append(distribution.getHighest())
+                .append(",\"step\":").append(distribution.getStep())
+                .append(",\"mean\":").append(distribution.getMean())
+                .append(",\"standardDeviation\":").append(distribution.getStandardDeviation())
+                .append(",\"chances\":[");
+
+        for (int i = 0; i < distribution.size(); i++) {
+            json.append(i > 0 ? "," : "").append(distribution.getChance(i));
+
+        }
+
+        return json.append("]}").toString();
+    }
+
+    private static RollSpec rollSpec(Map<String, String> parameters, int dice) {
+        return RollSpec.of(intParameter(parameters, "min", 1), intParameter(parameters, "max", 6),
+                "true".equals(parameters.get("ignoreEven")), "true".equals(parameters.get("ignoreOdd")), dice);
+
+    }
+
+    // NumberFormatException is an IllegalArgumentException, so a bad number is answered with 400
+    private static int intParameter(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+
+        if (query == null || query.isEmpty()) {
+            return parameters;
+
+        }
+
+        try {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+
+                }
+            }
+
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+
+        }
+
+        return parameters;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        for (int read; (read = in.read(buffer)) >= 0; ) {
+            body.write(buffer, 0, read);
+
+            if (body.size() > MAX_BODY_SIZE) {
+                throw new IllegalArgumentException("A batch can be at most " + MAX_BODY_SIZE + " bytes");
+
+            }
+        }
+
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":\"");
+
+        for (char c : String.valueOf(message).toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+
+            } else {
+                json.append(c);
+
+            }
+        }
+
+        return json.append("\"}").toString();
+    }
+
+    // Answered with 404 rather than 400
+    private static class NoSuchCallException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        NoSuchCallException(String message) {
+            super(message);
+
+        }
+    }
+
+    // Answered with 413 rather than 400
+    private static class TooLargeException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        TooLargeException(String message) {
+            super(message);
+
+        }
+    }
+}
@@ -0,0 +1,225 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/* The DistributionCalculator class will:
+ * ------------------------
+ * - Work out the exact chance of every total of a roll (the sum of all dice, with the range and ignore even/odd options), without rolling anything
+ * - Keep the results by RollSpec, so asking for the same odds again is instant
+ *
+ * Every die has the same chance of landing on each of its faces, so adding one more die is a convolution with a flat distribution.
+ * That is a sliding window sum over the totals so far, which takes one pass per die (rather than one pass per die per face).
+ * The chances are symmetric and rise up to the middle total, so only the lower half is summed and the upper half is its mirror image.
+ * On the rising half the value leaving the window is never larger than the ones in it, so no chance is lost to cancellation,
+ * and the highest totals are as exact as the lowest (ie. 100d20 rolls 2000 with a chance of 20^-100, not rounding noise).
+ * The passes grow with the totals so far, so the work is about dice * totals / 2 steps: quadratic in the number of dice.
+ * Rolls past MAX_WORK steps (a few tenths of a second) are refused rather than left running for minutes or hours.
+ *
+ * Methods:
+ * ------------------------
+ * - distribution: returns the chances of every total of the RollSpec, throws an IllegalArgumentException if there are too many totals,
+ *   or if working them out would take too long.
+ * - countTotals: returns how many different totals a RollSpec can roll.
+ * - estimateWork: returns about how many steps working out the distribution takes, to be checked against MAX_WORK before starting.
+ */
+
+public class DistributionCalculator {
+    // The most totals worked out for one distribution (32 MB of doubles), and the most distributions kept
+    static final int MAX_TOTALS = 1 << 22;
+    static final int MAX_CACHED_DISTRIBUTIONS = 64;
+
+    // The most steps (one per total per die) worked out for one distribution
+    static final long MAX_WORK = 1L << 27;
+
+    private final ConcurrentHashMap<RollSpec, Distribution> cache = new ConcurrentHashMap<>();
+
+    // The chances of every total of a roll. Totals are getLowest(), getLowest() + getStep(), ... getHighest().
+    public static final class Distribution {
+        private final long lowest;
+        private final long step;
+        private final double[] chances;
+        private final double mean;
+        private final double variance;
+
+        Distribution(long lowest, long step, double[] chances) {
+            this.lowest = lowest;
+            this.step = step;
+            this.chances = chances;
+
+            double sum = 0.0;
+            double squares = 0.0;
+
+            for (int i = 0; i < chances.length; i++) {
+                double total = lowest + step * (double) i;
+                sum += chances[i] * total;
+                squares += chances[i] * total * total;
+
+            }
+
+            this.mean = sum;
+            this.variance = Math.max(0.0, squares - sum * sum);
+
+        }
+
+        public int size() {
+            return chances.length;
+
+        }
+
+        public long getLowest() {
+            return lowest;
+
+        }
+
+        public long getHighest() {
+            return lowest + step * (chances.length - 1);
+
+        }
+
+        public long getStep() {
+            return step;
+
+        }
+
+        // Method will return the total at the given index, from lowest to highest
+        public long getTotal(int index) {
+            return lowest + step * index;
+
+        }
+
+        // Method will return the chance of the total at the given index
+        public double getChance(int index) {
+            return chances[index];
+
+        }
+
+        // Method will return the chance of rolling exactly total (0 if it cannot be rolled)
+        public double chanceOf(long total) {
+            long offset = total - lowest;
+
+            if (offset < 0 || offset % step != 0 || offset / step >= chances.length) {
+                return 0.0;
+
+            }
+
+            return chances[(int) (offset / step)];
+        }
+
+        public double getMean() {
+            return mean;
+
+        }
+
+        public double getStandardDeviation() {
+            return Math.sqrt(variance);
+
+        }
+    }
+
+    // Method will return the chances of every total of the RollSpec
+    public Distribution distribution(RollSpec spec) {
+        Distribution distribution = cache.get(spec);
+
+        if (distribution != null) {
+            return distribution;
+
+        }
+
+        distribution = calculate(spec);
+
+        // Keep the cache from growing without bound
+        if (cache.size() >= MAX_CACHED_DISTRIBUTIONS) {
+            cache.clear();
+
+        }
+
+        cache.putIfAbsent(spec, distribution);
+
+        return distribution;
+    }
+
+    // Method will return how many different totals the RollSpec can roll
+    public static long countTotals(RollSpec spec) {
+        return spec.getDice() * (spec.getFaces() - 1) + 1;
+
+    }
+
+    // Method will return about how many steps working out the distribution takes: each die sums the totals so far, which grow to countTotals
+    public static long estimateWork(RollSpec spec) {
+        long dice = spec.getDice();
+        long totals = countTotals(spec);
+
+        if (totals > Long.MAX_VALUE / dice) {
+            return Long.MAX_VALUE;
+
+        }
+
+        return dice * totals / 2;
+    }
+
+    // Method will work out the distribution, one die at a time
+    private Distribution calculate(RollSpec spec) {
+        long totals = countTotals(spec);
+
+        if (totals > MAX_TOTALS) {
+            throw new IllegalArgumentException("There are too many possible totals (" + totals + ") to work out the odds. At most " + MAX_TOTALS + " are allowed.");
+
+        }
+
+        long work = estimateWork(spec);
+
+        if (work > MAX_WORK) {
+            throw new IllegalArgumentException("There are too many dice (" + spec.getDice() + ") to work out the odds quickly (about " + work
+                    + " steps). At most " + MAX_WORK + " steps are allowed.");
+
+        }
+
+        // Each die adds 0 to faces - 1 steps to the lowest total
+        int faces = (int) spec.getFaces();
+        double faceChance = 1.0 / faces;
+        double[] chances = new double[(int) totals];
+        double[] next = new double[(int) totals];
+        chances[0] = 1.0;
+        int length = 1;
+
+        for (int die = 0; die < spec.getDice(); die++) {
+            int nextLength = length + faces - 1;
+            int half = (nextLength + 1) / 2;
+            double window = 0.0;
+
+            // next[i] is the sum of chances[i - faces + 1 .. i], kept as a running window over the lower half
+            for (int i = 0; i < half; i++) {
+                if (i < length) {
+                    window += chances[i];
+
+                }
+
+                if (i - faces >= 0) {
+                    window -= chances[i - faces];
+
+                }
+
+                next[i] = window * faceChance;
+
+            }
+
+            // the upper half mirrors the lower half
+            for (int i = half; i < nextLength; i++) {
+                next[i] = next[nextLength - 1 - i];
+
+            }
+
+            double[] swap = chances;
+            chances = next;
+            next = swap;
+            length = nextLength;
+
+        }
+
+        long lowest = spec.getDice() * spec.getFirstFace();
+
+        return new Distribution(lowest, spec.getStep(), chances);
+    }
+}
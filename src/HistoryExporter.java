@@ -0,0 +1,437 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/* The HistoryExporter class will:
+ * ------------------------
+ * - Write the past results straight from the roll history to a file, a block at a time, so the report never has to exist as one String
+ * - Report its progress and stop early when asked to
+ * - Write to a temporary file first, so a cancelled or failed export never leaves a half written file behind
+ *
+ * Methods:
+ * ------------------------
+ * - export: writes the past results to the given file in the chosen format.
+ * - exportText: writes the "Roll #" report (one "N.     value" line per roll, followed by the summary) to the given file.
+ * - exportCsv: writes a "roll,value" CSV file.
+ * - exportBinary: writes a small header (lowest and highest roll, faces between them, number of rolls, bits per roll) followed by every roll,
+ *   bit packed with the fewest bits that fit every roll (3 for a d6, 5 for a d20), as PackedChunk does in memory.
+ * - importBinary: reads a binary export back into a roll history.
+ */
+
+public class HistoryExporter {
+    // Number of rolls read from the history per block, size of the write buffer, and the most bytes a single row can take
+    static final int BLOCK_SIZE = 8192;
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int MAX_ROW_SIZE = 32;
+
+    // Binary files start with "DICE", the version, the lowest and highest roll, the faces between them, flags, the number of rolls,
+    // and the bits per roll. The history can mix rolls of several options (and dice expressions), so the header describes the rolls
+    // rather than any one option. No flags are set, the byte is kept for later use.
+    // The rolls follow as little endian longs, roll i (less the lowest roll) in the width bits starting at bit i * width.
+    // Versions 1 and 2 wrote every roll as an int32 instead, and are not read back.
+    static final int BINARY_MAGIC = 0x45434944;
+    static final int BINARY_VERSION = 3;
+    static final int BINARY_HEADER_SIZE = 34;
+
+    // The formats that can be chosen in the export window
+    public enum Format {
+        TEXT("Text Report", ".txt"),
+        CSV("CSV", ".csv"),
+        BINARY("Binary", ".dice");
+
+        private final String displayName;
+        private final String extension;
+
+        Format(String displayName, String extension) {
+            this.displayName = displayName;
+            this.extension = extension;
+
+        }
+
+        public String getExtension() {
+            return extension;
+
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+
+        }
+    }
+
+    // Used to report progress to the caller and to ask whether the export should stop
+    public interface Progress {
+        void update(long done, long total);
+
+        boolean isCancelled();
+    }
+
+    // An export that is never cancelled and reports its progress nowhere
+    public static final Progress NO_PROGRESS = new Progress() {
+        @Override
+        public void update(long done, long total) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+
+        }
+    };
+
+    // Writes the contents of a file, returns false if it stopped early
+    private interface Body {
+        boolean write(FileChannel channel, ByteBuffer buffer) throws IOException;
+    }
+
+    // Writes a single roll, the buffer is guaranteed to have MAX_ROW_SIZE bytes free
+    private interface Row {
+        void write(long rollNum, int value);
+    }
+
+    // Packs rolls into the buffer width bits at a time, writing each long once it is full
+    private static final class BitWriter {
+        private final ByteBuffer buffer;
+        private final int lowest;
+        private final int width;
+        private long bits = 0;
+        private int count = 0;
+
+        BitWriter(ByteBuffer buffer, int lowest, int width) {
+            this.buffer = buffer;
+            this.lowest = lowest;
+            this.width = width;
+
+        }
+
+        void write(int roll) {
+            if (width == 0) {
+                return;
+
+            }
+
+            long value = (long) roll - lowest;
+            bits |= value << count;
+            count += width;
+
+            // the long is full, any bits of the roll that did not fit start the next one
+            if (count >= 64) {
+                buffer.putLong(bits);
+                count -= 64;
+                bits = count == 0 ? 0 : value >>> (width - count);
+
+            }
+        }
+
+        // Method will write the last, partly filled long
+        void finish() {
+            if (count > 0) {
+                buffer.putLong(bits);
+                count = 0;
+
+            }
+        }
+    }
+
+    // Method will write the past results to file in the given format, returns false if the export was cancelled
+    public boolean export(Format format, RollHistory pastVals, String summary, Path file, Progress progress) throws IOException {
+        switch (format) {
+            case CSV:
+                return exportCsv(pastVals, file, progress);
+
+            case BINARY:
+                return exportBinary(pastVals, file, progress);
+
+            default:
+                return exportText(pastVals, summary, file, progress);
+
+        }
+    }
+
+    // Method will write the text report to file, returns false if the export was cancelled
+    public boolean exportText(RollHistory pastVals, String summary, Path file, Progress progress) throws IOException {
+        return writeFile(file, (channel, buffer) -> {
+            putAscii(channel, buffer, "Roll #\n\n");
+
+            boolean finished = writeRolls(pastVals, channel, buffer, progress, (rollNum, value) -> {
+                putNumber(buffer, rollNum);
+                buffer.put((byte) '.');
+
+                for (int space = 0; space < 5; space++) {
+                    buffer.put((byte) ' ');
+
+                }
+
+                putNumber(buffer, value);
+                buffer.put((byte) '\n');
+
+            });
+
+            if (finished) {
+                putAscii(channel, buffer, "\n" + summary);
+
+            }
+
+            return finished;
+        });
+    }
+
+    // Method will write a "roll,value" CSV file, returns false if the export was cancelled
+    public boolean exportCsv(RollHistory pastVals, Path file, Progress progress) throws IOException {
+        return writeFile(file, (channel, buffer) -> {
+            putAscii(channel, buffer, "roll,value\n");
+
+            return writeRolls(pastVals, channel, buffer, progress, (rollNum, value) -> {
+                putNumber(buffer, rollNum);
+                buffer.put((byte) ',');
+                putNumber(buffer, value);
+                buffer.put((byte) '\n');
+
+            });
+        });
+    }
+
+    // Method will write the header followed by every roll, bit packed, returns false if the export was cancelled.
+    // The header holds the lowest and highest rolls (both 0 if there are none).
+    public boolean exportBinary(RollHistory pastVals, Path file, Progress progress) throws IOException {
+        return writeFile(file, (channel, buffer) -> {
+            RollStatistics pastStats = pastVals.getStatistics();
+            int lowest = pastStats.isEmpty() ? 0 : pastStats.getLowest();
+            int highest = pastStats.isEmpty() ? 0 : pastStats.getHighest();
+            int width = PackedChunk.widthOf(lowest, highest);
+
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(BINARY_MAGIC);
+            buffer.putInt(BINARY_VERSION);
+            buffer.putInt(lowest);
+            buffer.putInt(highest);
+            buffer.putLong(pastStats.isEmpty() ? 0 : (long) highest - lowest + 1);
+            buffer.put((byte) 0);
+            buffer.putLong(pastVals.size());
+            buffer.put((byte) width);
+
+            BitWriter bits = new BitWriter(buffer, lowest, width);
+            boolean finished = writeRolls(pastVals, channel, buffer, progress, (rollNum, value) -> {
+                bits.write(value);
+
+            });
+
+            if (finished) {
+                if (buffer.remaining() < 8) {
+                    flush(channel, buffer);
+
+                }
+
+                bits.finish();
+
+            }
+
+            return finished;
+        });
+    }
+
+    // Method will read a binary export back into pastVals (which is not cleared first)
+    public void importBinary(Path file, RollHistory pastVals) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(BINARY_HEADER_SIZE);
+            readFully(channel, buffer);
+            buffer.flip();
+
+            if (buffer.getInt() != BINARY_MAGIC || buffer.getInt() != BINARY_VERSION) {
+                throw new IOException(file + " is not a binary dice export (version " + BINARY_VERSION + ")!");
+
+            }
+
+            int lowest = buffer.getInt();
+            int highest = buffer.getInt();
+            buffer.getLong();
+            buffer.get();
+            long count = buffer.getLong();
+            int width = buffer.get();
+
+            if (count < 0 || count > Integer.MAX_VALUE - pastVals.size()) {
+                throw new IOException(file + " holds too many rolls!");
+
+            }
+
+            if (highest < lowest || width != PackedChunk.widthOf(lowest, highest)) {
+                throw new IOException(file + " is damaged!");
+
+            }
+
+            long mask = (1L << width) - 1;
+            long words = (count * width + 63) / 64;
+            long bits = 0;
+            int available = 0;
+            int[] block = new int[RollHistory.CHUNK_SIZE];
+            buffer.clear().limit(0);
+
+            for (long done = 0; done < count; ) {
+                int len = (int) Math.min(block.length, count - done);
+
+                for (int i = 0; i < len; i++) {
+                    long value;
+
+                    if (available >= width) {
+                        value = bits & mask;
+                        bits >>>= width;
+                        available -= width;
+
+                    // the roll starts in this long and ends in the next one
+                    } else {
+                        if (!buffer.hasRemaining()) {
+                            buffer.clear().limit((int) Math.min(BUFFER_SIZE / 8, words) * 8);
+                            readFully(channel, buffer);
+                            buffer.flip();
+
+                        }
+
+                        long word = buffer.getLong();
+                        words--;
+                        value = (bits | word << available) & mask;
+                        bits = word >>> (width - available);
+                        available += 64 - width;
+
+                    }
+
+                    block[i] = (int) (lowest + value);
+
+                }
+
+                pastVals.appendAll(block, 0, len);
+                done += len;
+
+            }
+        }
+    }
+
+    // Method will fill the buffer from the channel, or fail if the file ends first
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of file!");
+
+            }
+        }
+    }
+
+    // Method will write the body to a temporary file and only replace the real file once everything has been written
+    private boolean writeFile(Path file, Body body) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".part");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        boolean finished = false;
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            finished = body.write(channel, buffer);
+
+            if (finished) {
+                flush(channel, buffer);
+                DiceMetrics.get().addExport(channel.size());
+
+            }
+
+        } finally {
+            if (finished) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+
+            } else {
+                Files.deleteIfExists(tempFile);
+
+            }
+        }
+
+        return finished;
+    }
+
+    // Method will read the history a block at a time and hand each roll to the row writer, returns false if the export was cancelled
+    private boolean writeRolls(RollHistory pastVals, FileChannel channel, ByteBuffer buffer, Progress progress, Row row) throws IOException {
+        int total = pastVals.size();
+        int[] block = new int[BLOCK_SIZE];
+
+        for (int from = 0; from < total; from += BLOCK_SIZE) {
+            if (progress.isCancelled()) {
+                return false;
+
+            }
+
+            int len = Math.min(BLOCK_SIZE, total - from);
+            pastVals.copyTo(from, block, 0, len);
+
+            for (int i = 0; i < len; i++) {
+                if (buffer.remaining() < MAX_ROW_SIZE) {
+                    flush(channel, buffer);
+
+                }
+
+                row.write(from + i + 1L, block[i]);
+
+            }
+
+            progress.update(from + len, total);
+
+        }
+
+        return true;
+    }
+
+    // Method will write the buffer's contents to the channel and empty it
+    static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+
+        }
+
+        buffer.clear();
+
+    }
+
+    // Method will add plain text (digits, letters, and punctuation only) to the buffer
+    static void putAscii(WritableByteChannel channel, ByteBuffer buffer, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (!buffer.hasRemaining()) {
+                flush(channel, buffer);
+
+            }
+
+            buffer.put((byte) text.charAt(i));
+
+        }
+    }
+
+    // Method will add the decimal digits of number to the buffer without creating a String
+    static void putNumber(ByteBuffer buffer, long number) {
+        if (number < 0) {
+            buffer.put((byte) '-');
+            number = -number;
+
+        }
+
+        // find the largest power of ten that fits, then write the digits from left to right
+        long divisor = 1;
+
+        while (number / divisor >= 10) {
+            divisor *= 10;
+
+        }
+
+        while (divisor > 0) {
+            buffer.put((byte) ('0' + (number / divisor) % 10));
+            divisor /= 10;
+
+        }
+    }
+}
@@ -0,0 +1,218 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/* The HistorySpill class will:
+ * ------------------------
+ * - Keep the oldest chunks of a RollHistory on disk, compressed, once there are more rolls than the history keeps in memory
+ * - Read them back (one chunk at a time, with the last one read kept) for the history window and exports
+ *
+ * Each chunk is written as one deflated segment at the end of a temporary file, which is only made once the first chunk is spilled.
+ * The file is deleted when the history is cleared or closed, and when the program exits.
+ *
+ * Methods:
+ * ------------------------
+ * - write: compresses a full chunk and adds it to the end of the file as the next segment.
+ * - get / read: return one roll / copy a run of rolls from a segment.
+ * - clear: removes every segment and deletes the file.
+ * - close: deletes the file for good.
+ */
+
+public class HistorySpill implements Closeable, RollHistory.Spill {
+    private final Path directory;
+    private final int chunkSize;
+    private Path file = null;
+    private FileChannel channel = null;
+
+    // Where each segment starts in the file, and how long it is
+    private long[] offsets = new long[16];
+    private int[] lengths = new int[16];
+    private int segments = 0;
+    private long end = 0;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer raw;
+    private byte[] compressed;
+
+    // The last segment read, so reading a segment roll by roll only decompresses it once
+    private final int[] cache;
+    private int cachedSegment = -1;
+
+    public HistorySpill(Path directory, int chunkSize) {
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.raw = ByteBuffer.allocate(chunkSize * 4).order(ByteOrder.LITTLE_ENDIAN);
+        this.compressed = new byte[chunkSize * 4 / 2];
+        this.cache = new int[chunkSize];
+
+    }
+
+    // Method will compress a full chunk and write it to the end of the file, as the given segment
+    @Override
+    public synchronized void write(int segment, int[] chunk) {
+        if (segment != segments) {
+            throw new IllegalArgumentException("Segment " + segment + " is not the next segment (" + segments + ")");
+
+        }
+
+        raw.clear();
+        raw.asIntBuffer().put(chunk, 0, chunkSize);
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, chunkSize * 4);
+        deflater.finish();
+        int length = 0;
+
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+
+            }
+
+            length += deflater.deflate(compressed, length, compressed.length - length);
+
+        }
+
+        try {
+            if (channel == null) {
+                Files.createDirectories(directory);
+                file = Files.createTempFile(directory, "history", ".spill");
+                file.toFile().deleteOnExit();
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(compressed, 0, length);
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, end + buffer.position());
+
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill the history to disk", e);
+
+        }
+
+        if (segments == offsets.length) {
+            offsets = Arrays.copyOf(offsets, segments * 2);
+            lengths = Arrays.copyOf(lengths, segments * 2);
+
+        }
+
+        offsets[segments] = end;
+        lengths[segments] = length;
+        segments++;
+        end += length;
+
+    }
+
+    // Method will return one roll of a segment
+    @Override
+    public synchronized int get(int segment, int offset) {
+        return load(segment)[offset];
+
+    }
+
+    // Method will copy len rolls of a segment, starting at offset, into dest starting at off
+    @Override
+    public synchronized void read(int segment, int offset, int[] dest, int off, int len) {
+        System.arraycopy(load(segment), offset, dest, off, len);
+
+    }
+
+    // Method will make sure the segment is the one in the cache
+    private int[] load(int segment) {
+        if (segment < 0 || segment >= segments) {
+            throw new IndexOutOfBoundsException("Segment: " + segment + ", Segments: " + segments);
+
+        }
+
+        if (segment == cachedSegment) {
+            return cache;
+
+        }
+
+        int length = lengths[segment];
+
+        if (compressed.length < length) {
+            compressed = new byte[length];
+
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(compressed, 0, length);
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offsets[segment] + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file!");
+
+                }
+            }
+
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+
+            if (inflater.inflate(raw.array(), 0, chunkSize * 4) != chunkSize * 4) {
+                throw new IOException("Spilled segment " + segment + " is damaged!");
+
+            }
+
+        } catch (IOException | DataFormatException e) {
+            throw new UncheckedIOException("Could not read the spilled history", e instanceof IOException ? (IOException) e : new IOException(e));
+
+        }
+
+        raw.clear();
+        raw.asIntBuffer().get(cache, 0, chunkSize);
+        cachedSegment = segment;
+
+        return cache;
+    }
+
+    // Method will remove every segment and delete the file
+    @Override
+    public synchronized void clear() {
+        segments = 0;
+        end = 0;
+        cachedSegment = -1;
+
+        try {
+            if (channel != null) {
+                channel.close();
+                Files.deleteIfExists(file);
+
+            }
+
+        } catch (IOException e) {
+            System.err.println("Could not delete " + file + ": " + e.getMessage());
+
+        } finally {
+            channel = null;
+            file = null;
+
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        clear();
+        deflater.end();
+        inflater.end();
+
+    }
+}
@@ -0,0 +1,169 @@
+// =================================
+// Dice Program
+// =================================
+
+import javafx.animation.PauseTransition;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.layout.GridPane;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/* The LoadingWindow class will:
+ * ------------------------
+ * - Keep one loading window for the whole program, made the first time it is needed and reused after that
+ * - Only show the window once something has been loading for longer than SHOW_DELAY, so quick work never makes it flicker
+ * - Follow the progress of the most recent Task and allow it to be cancelled
+ *
+ * Several things may load at once (ie. past results opened during a long roll), the window stays until every one of them is closed.
+ * Must only be used from the JavaFX application thread.
+ *
+ * Methods:
+ * ------------------------
+ * - show: starts loading, returns a Loading to close once done. Given a Task, shows its progress and a cancel button.
+ * - Loading.close: stops loading, hiding the window if nothing else is loading.
+ */
+
+public class LoadingWindow {
+    // Loading that takes less than this is never shown
+    static final Duration SHOW_DELAY = Duration.millis(300);
+
+    private final int padding;
+    private final int verticalGap;
+    private final int horizontalGap;
+    private final List<Loading> loading = new ArrayList<>();
+
+    // Made the first time they are needed
+    private Stage loadingStage;
+    private ProgressIndicator loadingIndicator;
+    private Button cancelLoadingButton;
+    private PauseTransition showDelay;
+
+    public LoadingWindow(int padding, int verticalGap, int horizontalGap) {
+        this.padding = padding;
+        this.verticalGap = verticalGap;
+        this.horizontalGap = horizontalGap;
+
+    }
+
+    // Something being loaded, close it once done
+    public final class Loading {
+        private final Task<?> task;
+
+        private Loading(Task<?> task) {
+            this.task = task;
+
+        }
+
+        public void close() {
+            if (loading.remove(this)) {
+                update();
+
+            }
+        }
+    }
+
+    // Method will start loading, the window is shown if it is still loading after SHOW_DELAY
+    public Loading show(Task<?> task) {
+        Loading started = new Loading(task);
+        loading.add(started);
+
+        if (showDelay == null) {
+            showDelay = new PauseTransition(SHOW_DELAY);
+            showDelay.setOnFinished(event -> {
+                if (!loading.isEmpty()) {
+                    stage().show();
+
+                }
+            });
+        }
+
+        update();
+
+        if (loadingStage == null || !loadingStage.isShowing()) {
+            showDelay.playFromStart();
+
+        }
+
+        return started;
+    }
+
+    // Method will follow the latest task, or hide the window once nothing is loading
+    private void update() {
+        if (loading.isEmpty()) {
+            showDelay.stop();
+
+            if (loadingStage != null) {
+                loadingStage.hide();
+
+            }
+
+            return;
+        }
+
+        // nothing to follow until the window is made, stage() calls update again once it is
+        if (loadingStage == null) {
+            return;
+
+        }
+
+        Task<?> task = null;
+
+        for (Loading each : loading) {
+            if (each.task != null) {
+                task = each.task;
+
+            }
+        }
+
+        loadingIndicator.progressProperty().unbind();
+
+        if (task != null) {
+            Task<?> followed = task;
+            loadingIndicator.progressProperty().bind(followed.progressProperty());
+            cancelLoadingButton.setOnAction(event -> followed.cancel());
+
+        } else {
+            loadingIndicator.setProgress(-1.0);
+
+        }
+
+        cancelLoadingButton.setVisible(task != null);
+        cancelLoadingButton.setManaged(task != null);
+        loadingStage.sizeToScene();
+
+    }
+
+    // Method will return the window, making it the first time
+    private Stage stage() {
+        if (loadingStage == null) {
+            // Initialize grid pane, loading indicator, label, and cancel button
+            GridPane gridPane = new GridPane();
+            loadingIndicator = new ProgressIndicator(-1.0);
+            Label loadingLabel = new Label("Loading...");
+            cancelLoadingButton = new Button("Cancel");
+
+            gridPane.setPadding(new Insets(padding, padding, padding, padding));
+            gridPane.setHgap(verticalGap);
+            gridPane.setVgap(horizontalGap);
+            gridPane.add(loadingIndicator, 0, 0);
+            gridPane.add(loadingLabel, 1, 0);
+            gridPane.add(cancelLoadingButton, 2, 0);
+
+            loadingStage = new Stage();
+            loadingStage.setScene(new Scene(gridPane));
+            loadingStage.setTitle("Loading");
+            loadingStage.setResizable(false);
+            update();
+
+        }
+
+        return loadingStage;
+    }
+}
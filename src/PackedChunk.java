@@ -0,0 +1,209 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.Arrays;
+
+/* The PackedChunk class will:
+ * ------------------------
+ * - Hold a full chunk of past rolls in as few bits as the rolls need, once the chunk will no longer change
+ * - Pick the encoding from the rolls themselves: bit packing with the smallest width that fits (lowest to highest roll),
+ *   or runs of repeated rolls when that is smaller (ie. a long run of the same value)
+ *
+ * A d6 needs 3 bits per roll and a d20 5 bits, instead of 32 for an int (and far more for a boxed Integer).
+ * Reading a roll is a shift and a mask (bit packing) or a binary search over the runs, and reading rolls in order never searches at all.
+ *
+ * Methods:
+ * ------------------------
+ * - pack: returns the smallest encoding of the rolls.
+ * - get: returns the roll at the given index.
+ * - copyTo: decodes a range of rolls into an array, in order.
+ * - size: returns the number of rolls.
+ * - widthOf: returns the bits needed per roll to pack rolls from lowest to highest (also used by binary exports).
+ */
+
+public final class PackedChunk {
+    private final int length;
+    private final int base;
+    private final int width;
+
+    // bit packed rolls, or null when stored as runs
+    private final long[] words;
+
+    // run i repeats runValues[i] up to (not including) runEnds[i]
+    private final int[] runValues;
+    private final int[] runEnds;
+
+    private PackedChunk(int length, int base, int width, long[] words, int[] runValues, int[] runEnds) {
+        this.length = length;
+        this.base = base;
+        this.width = width;
+        this.words = words;
+        this.runValues = runValues;
+        this.runEnds = runEnds;
+
+    }
+
+    // Method will return the smallest encoding of the first length rolls of values
+    public static PackedChunk pack(int[] values, int length) {
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+        int runs = length > 0 ? 1 : 0;
+
+        for (int i = 0; i < length; i++) {
+            lowest = Math.min(lowest, values[i]);
+            highest = Math.max(highest, values[i]);
+
+            if (i > 0 && values[i] != values[i - 1]) {
+                runs++;
+
+            }
+        }
+
+        int width = length == 0 ? 0 : widthOf(lowest, highest);
+        long packedBytes = ((long) length * width + 63) / 64 * 8;
+
+        if ((long) runs * 8 < packedBytes) {
+            return packRuns(values, length, runs);
+
+        }
+
+        long[] words = new long[(int) (((long) length * width + 63) / 64)];
+        long position = 0;
+
+        // with a width of 0 every roll is the lowest, and there is nothing to write
+        for (int i = 0; i < length && width > 0; i++, position += width) {
+            long bits = (long) values[i] - lowest;
+            int word = (int) (position >>> 6);
+            int shift = (int) (position & 63);
+            words[word] |= bits << shift;
+
+            // the roll continues into the next word
+            if (shift + width > 64) {
+                words[word + 1] |= bits >>> (64 - shift);
+
+            }
+        }
+
+        return new PackedChunk(length, lowest, width, words, null, null);
+    }
+
+    private static PackedChunk packRuns(int[] values, int length, int runs) {
+        int[] runValues = new int[runs];
+        int[] runEnds = new int[runs];
+        int run = 0;
+
+        for (int i = 1; i <= length; i++) {
+            if (i == length || values[i] != values[i - 1]) {
+                runValues[run] = values[i - 1];
+                runEnds[run] = i;
+                run++;
+
+            }
+        }
+
+        return new PackedChunk(length, 0, -1, null, runValues, runEnds);
+    }
+
+    public int size() {
+        return length;
+
+    }
+
+    // Method will return the number of bits needed for the largest difference from the lowest roll (0 if every roll is the same)
+    public static int widthOf(int lowest, int highest) {
+        return 64 - Long.numberOfLeadingZeros((long) highest - lowest);
+
+    }
+
+    // Method will return the roll at the given index
+    public int get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+
+        }
+
+        if (words == null) {
+            return runValues[runOf(index)];
+
+        }
+
+        return base + (int) bitsAt((long) index * width);
+    }
+
+    // Method will decode len rolls, starting at roll from, into dest starting at off
+    public void copyTo(int from, int[] dest, int off, int len) {
+        if (from < 0 || len < 0 || (long) from + len > length) {
+            throw new IndexOutOfBoundsException("Invalid range " + from + ".." + ((long) from + len) + " of " + length);
+
+        }
+
+        int to = off + len;
+
+        if (words == null) {
+            // find the first run once, then walk the runs in order
+            for (int run = len > 0 ? runOf(from) : 0; off < to; run++) {
+                int end = Math.min(runEnds[run] - from, to - off) + off;
+                int value = runValues[run];
+
+                while (off < end) {
+                    dest[off++] = value;
+                    from++;
+
+                }
+            }
+
+            return;
+        }
+
+        if (width == 0) {
+            Arrays.fill(dest, off, to, base);
+            return;
+
+        }
+
+        for (long position = (long) from * width; off < to; off++, position += width) {
+            dest[off] = base + (int) bitsAt(position);
+
+        }
+    }
+
+    // Method will return the width bits starting at the given bit position
+    private long bitsAt(long position) {
+        if (width == 0) {
+            return 0;
+
+        }
+
+        int word = (int) (position >>> 6);
+        int shift = (int) (position & 63);
+        long bits = words[word] >>> shift;
+
+        if (shift + width > 64) {
+            bits |= words[word + 1] << (64 - shift);
+
+        }
+
+        return bits & ((1L << width) - 1);
+    }
+
+    // Method will return the run holding the roll at index
+    private int runOf(int index) {
+        int low = 0;
+        int high = runEnds.length - 1;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (runEnds[middle] <= index) {
+                low = middle + 1;
+
+            } else {
+                high = middle;
+
+            }
+        }
+
+        return low;
+    }
+}
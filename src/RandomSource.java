@@ -0,0 +1,109 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+
+/* The RandomSource enum will:
+ * ------------------------
+ * - List the random number generators that rolls can be made from, as chosen in the custom options
+ * - Make a generator of the chosen kind from a seed
+ *
+ * SplittableRandom and Xoshiro256** are fast, and the same seed always gives the same rolls, so a session can be replayed.
+ * SecureRandom is much slower but cannot be predicted, for games where the rolls may be audited. It ignores the seed.
+ *
+ * Methods:
+ * ------------------------
+ * - create: returns a new generator of this kind, made from the seed if the kind can be seeded.
+ * - isSeeded: returns true if the same seed always gives the same rolls.
+ */
+
+public enum RandomSource {
+    SPLITTABLE("SplittableRandom", true) {
+        @Override
+        public RollRandom create(long seed) {
+            return new Splittable(new SplittableRandom(seed));
+
+        }
+    },
+    XOSHIRO("Xoshiro256**", true) {
+        @Override
+        public RollRandom create(long seed) {
+            return new Xoshiro256(seed);
+
+        }
+    },
+    SECURE("SecureRandom", false) {
+        @Override
+        public RollRandom create(long seed) {
+            return new Secure(new SecureRandom());
+
+        }
+    };
+
+    private final String displayName;
+    private final boolean seeded;
+
+    RandomSource(String displayName, boolean seeded) {
+        this.displayName = displayName;
+        this.seeded = seeded;
+
+    }
+
+    public abstract RollRandom create(long seed);
+
+    public boolean isSeeded() {
+        return seeded;
+
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+
+    }
+
+    private static final class Splittable implements RollRandom {
+        private final SplittableRandom random;
+
+        Splittable(SplittableRandom random) {
+            this.random = random;
+
+        }
+
+        @Override
+        public int getAsInt() {
+            return random.nextInt();
+
+        }
+
+        @Override
+        public RollRandom split() {
+            return new Splittable(random.split());
+
+        }
+    }
+
+    private static final class Secure implements RollRandom {
+        private final SecureRandom random;
+
+        Secure(SecureRandom random) {
+            this.random = random;
+
+        }
+
+        @Override
+        public int getAsInt() {
+            return random.nextInt();
+
+        }
+
+        // each thread gets its own SecureRandom, so they never wait on each other
+        @Override
+        public RollRandom split() {
+            return new Secure(new SecureRandom());
+
+        }
+    }
+}
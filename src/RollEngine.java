@@ -0,0 +1,225 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntSupplier;
+
+/* The RollEngine class will:
+ * ------------------------
+ * - Generate dice rolls without touching any JavaFX controls, so it can be used by the GUI as well as headless
+ * - Summarize each batch as it is rolled, instead of reading the lowest and highest back from text fields
+ * - Split large batches across every core, each part with its own random number stream
+ *
+ * Every roll is described by an immutable RollSpec, so the engine itself holds no options and can be used from any thread.
+ *
+ * Methods:
+ * ------------------------
+ * - newVal: generates a new random number with given constraints (range, ignore even, ignore odd). Ignored values are never drawn, rather than drawn and retried.
+ * - nextBounded: returns an unbiased random number below a bound of up to 2^32, using 64 bit math and no objects.
+ * - fill: rolls a run of an array in blocks, drawing every random number first and then turning them all into faces in one tight loop.
+ * - roll: rolls a batch of dice and returns the values along with the batch's summary, from the given RollRandom or a new randomly seeded one. Large batches are rolled in parallel.
+ * - rollParallel: rolls a batch of dice across every core, each part drawing from a generator split off the given one.
+ */
+
+public class RollEngine {
+    // Batches at least this large are rolled in parallel, and are split into parts of at most PARALLEL_CHUNK_SIZE rolls
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+    static final int PARALLEL_CHUNK_SIZE = 1 << 16;
+
+    // 2^32, the number of faces of the largest range (-2,147,483,648 to 2,147,483,647)
+    static final long FULL_RANGE = 1L << 32;
+    static final long LOW_BITS = FULL_RANGE - 1;
+
+    // method will generate a random number with given constraints
+    public int newVal(RollSpec spec) {
+        return newVal(ThreadLocalRandom.current()::nextInt, spec);
+
+    }
+
+    // method will generate a random number with given constraints, using random for uniformly distributed 32 bit numbers
+    static int newVal(IntSupplier random, RollSpec spec) {
+        // pick one of the valid values directly, so no random number is thrown away for being even or odd
+        return (int) (spec.getFirstFace() + spec.getStep() * nextBounded(random, spec.getFaces()));
+
+    }
+
+    // Method will return a uniformly distributed number from 0 to bound - 1, for any bound from 1 to 2^32 (Lemire's method)
+    static long nextBounded(IntSupplier random, long bound) {
+        long x = random.getAsInt() & LOW_BITS;
+
+        // every 32 bit number is a valid face
+        if (bound == FULL_RANGE) {
+            return x;
+
+        }
+
+        // The top 32 bits of x * bound are the result. Both are below 2^32, so the product fits in 64 (unsigned) bits.
+        long product = x * bound;
+        long low = product & LOW_BITS;
+
+        // Only when the bottom 32 bits are small can the result be biased, and only then is the (slow) remainder needed
+        if (low < bound) {
+            long threshold = FULL_RANGE % bound;
+
+            // rejections are rare (at most 1 in 2 draws, and far fewer for small bounds), so counting them costs nothing on the common path
+            while (low < threshold) {
+                DiceMetrics.get().addRejectedDraw();
+                x = random.getAsInt() & LOW_BITS;
+                product = x * bound;
+                low = product & LOW_BITS;
+
+            }
+        }
+
+        return product >>> 32;
+    }
+
+    // Method will roll values[from] to values[to - 1], giving exactly the rolls (and using exactly the random numbers) newVal would one at a time
+    static void fill(IntSupplier random, RollSpec spec, int[] values, int from, int to) {
+        long bound = spec.getFaces();
+        long firstFace = spec.getFirstFace();
+        long step = spec.getStep();
+
+        // Draws whose bottom 32 bits (of x * bound) are below this are biased and redrawn, as in nextBounded. 0 for the full range.
+        long threshold = FULL_RANGE % bound;
+
+        // First every random number, straight into the array, then each is turned into a face in place
+        for (int i = from; i < to; i++) {
+            values[i] = random.getAsInt();
+
+        }
+
+        int i = from;
+
+        for (; i < to; i++) {
+            long product = (values[i] & LOW_BITS) * bound;
+
+            if ((product & LOW_BITS) < threshold) {
+                break;
+
+            }
+
+            values[i] = (int) (firstFace + step * (product >>> 32));
+
+        }
+
+        // After a rejected draw, every later face is made from the draw after its own (read ahead of where it is written),
+        // and the last ones from new draws, just as newVal would have drawn them
+        int next = i;
+
+        while (i < to) {
+            long x = (next < to ? values[next] : random.getAsInt()) & LOW_BITS;
+            long product = x * bound;
+            next++;
+
+            if ((product & LOW_BITS) < threshold) {
+                DiceMetrics.get().addRejectedDraw();
+                continue;
+
+            }
+
+            values[i++] = (int) (firstFace + step * (product >>> 32));
+
+        }
+    }
+
+    // roll will create spec.getDice() new random numbers given the constraints, and summarize them
+    public RollResult roll(RollSpec spec) {
+        return roll(spec, spec.getDice());
+
+    }
+
+    // roll will create count new random numbers given the constraints, and summarize them
+    public RollResult roll(RollSpec spec, int count) {
+        return roll(spec, count, RandomSource.SPLITTABLE.create(ThreadLocalRandom.current().nextLong()));
+
+    }
+
+    // roll will create count new random numbers from random given the constraints, and summarize them. The same generator state always gives the same rolls.
+    public RollResult roll(RollSpec spec, int count, RollRandom random) {
+        checkCount(count);
+        long started = System.nanoTime();
+        RollResult result;
+
+        if (count >= PARALLEL_THRESHOLD) {
+            result = rollParallel(spec, count, random.split());
+
+        } else {
+            int[] values = new int[count];
+            RollStatistics statistics = new RollStatistics();
+            fill(random, spec, values, 0, count);
+            statistics.addAll(values, 0, count);
+            result = new RollResult(values, statistics);
+
+        }
+
+        DiceMetrics metrics = DiceMetrics.get();
+        metrics.addRolls(count);
+        metrics.recordBatch(System.nanoTime() - started);
+
+        return result;
+    }
+
+    // rollParallel will create count new random numbers across every core. The same seed always gives the same rolls, whatever the number of cores.
+    public RollResult rollParallel(RollSpec spec, int count, RollRandom random) {
+        checkCount(count);
+
+        int[] values = new int[count];
+        RollStatistics statistics = new RollChunk(values, 0, count, random, spec).invoke();
+
+        return new RollResult(values, statistics);
+    }
+
+    // Method will make sure there is something to roll
+    static void checkCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one die must be rolled!");
+
+        }
+    }
+
+    // A part of a parallel roll. Large parts split in half, handing a new generator to the first half, until they are small enough to roll.
+    private static class RollChunk extends RecursiveTask<RollStatistics> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] values;
+        private final int from;
+        private final int to;
+        private final RollRandom random;
+        private final RollSpec spec;
+
+        RollChunk(int[] values, int from, int to, RollRandom random, RollSpec spec) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+            this.spec = spec;
+
+        }
+
+        @Override
+        protected RollStatistics compute() {
+            // Roll small parts directly
+            if (to - from <= PARALLEL_CHUNK_SIZE) {
+                RollStatistics statistics = new RollStatistics();
+                fill(random, spec, values, from, to);
+                statistics.addAll(values, from, to - from);
+                return statistics;
+
+            }
+
+            // Otherwise split in half, the split happens before forking so the generators do not depend on timing
+            int middle = (from + to) >>> 1;
+            RollChunk firstHalf = new RollChunk(values, from, middle, random.split(), spec);
+            RollChunk secondHalf = new RollChunk(values, middle, to, random, spec);
+            firstHalf.fork();
+
+            RollStatistics statistics = secondHalf.compute();
+            RollStatistics firstStatistics = firstHalf.join();
+            firstStatistics.merge(statistics);
+            return firstStatistics;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/* The RollHistory class will:
+ * ------------------------
+ * - Store past rolls as primitive ints in fixed size chunks, so no roll is ever boxed and growing never copies old rolls
+ * - Pack each chunk once it is full (see PackedChunk), using only the bits its rolls need (3 for a d6, 5 for a d20) or runs of repeated rolls,
+ *   so only the chunk being filled is kept as plain ints
+ * - Keep a RollStatistics summary of the stored rolls up to date as rolls are added
+ * - Optionally keep only the most recent rolls in memory, moving the oldest chunks to a Spill on disk, so memory stays flat however
+ *   long the session is. Spilled rolls can still be read, and the statistics still cover every roll. The spill is either a HistorySpill
+ *   (a compressed copy) or, when the session file is open, the SessionStore itself, which already holds every roll.
+ *
+ * Methods:
+ * ------------------------
+ * - append: adds a single roll to the end of the history.
+ * - appendAll: adds a batch of rolls (or a RollResult, whose summary is merged rather than recomputed) to the end of the history.
+ * - get: returns the roll at the given index.
+ * - copyTo: copies a range of rolls into an array, for bulk readers such as export.
+ * - size / isEmpty: returns the number of stored rolls.
+ * - clear: removes all rolls and resets the statistics.
+ * - getStatistics: returns the running summary of the stored rolls.
+ * - forEach: streams every roll, in order, to the given consumer.
+ * - forEachChunk: streams the backing chunks, in order, for bulk readers such as export.
+ * - setRetention: sets how many rolls are kept in memory (0 for all of them) and where older rolls are spilled.
+ */
+
+public class RollHistory {
+    // Chunks hold 2^16 rolls (256 KB) each
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Full chunks, packed, then the chunk being filled (made the first time a roll is added, and reused once packed)
+    private PackedChunk[] sealed = new PackedChunk[4];
+    private int sealedCount = 0;
+    private int[] current = null;
+    private int size = 0;
+    private final RollStatistics statistics = new RollStatistics(true);
+
+    // The oldest packed chunk is unpacked into this to be spilled
+    private int[] scratch = null;
+
+    // The most chunks kept in memory, and the chunks before sealed[0] that have been spilled to disk
+    private int maxChunks = Integer.MAX_VALUE;
+    private Spill spill = null;
+    private int spilledChunks = 0;
+
+    // Somewhere on disk full chunks can be moved to once they leave memory, and read back from by segment (the chunk's number)
+    public interface Spill {
+        void write(int segment, int[] chunk);
+
+        int get(int segment, int offset);
+
+        void read(int segment, int offset, int[] dest, int off, int len);
+
+        void clear();
+    }
+
+    // Used by forEachChunk to hand out a chunk and the number of rolls in use within it
+    public interface ChunkVisitor {
+        void visit(int[] chunk, int length);
+    }
+
+    // Method will add a single roll to the end of the history
+    public void append(int value) {
+        int offset = size & CHUNK_MASK;
+
+        // if the last chunk is full (or there is no chunk yet), start a new one
+        if (offset == 0) {
+            addChunk();
+
+        }
+
+        current[offset] = value;
+        size++;
+        statistics.add(value);
+
+    }
+
+    // Method will add len rolls from values, starting at off, to the end of the history
+    public void appendAll(int[] values, int off, int len) {
+        if (off < 0 || len < 0 || off + len > values.length) {
+            throw new IndexOutOfBoundsException("Invalid range " + off + ".." + (off + len) + " of " + values.length);
+
+        }
+
+        copyIn(values, off, len);
+        statistics.addAll(values, off, len);
+
+    }
+
+    public void appendAll(int[] values) {
+        appendAll(values, 0, values.length);
+
+    }
+
+    // Method will add a batch of rolls to the end of the history, reusing the batch's summary rather than recomputing it
+    public void appendAll(RollResult result) {
+        copyIn(result.getValues(), 0, result.getCount());
+        statistics.merge(result.getStatistics(), result.getValues(), 0, result.getCount());
+
+    }
+
+    // Method will copy len rolls into the chunks, starting new chunks as they fill
+    private void copyIn(int[] values, int off, int len) {
+        if ((long) size + len > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Roll history is full!");
+
+        }
+
+        // copy whole runs into each chunk instead of one value at a time
+        while (len > 0) {
+            int offset = size & CHUNK_MASK;
+
+            if (offset == 0) {
+                addChunk();
+
+            }
+
+            int run = Math.min(len, CHUNK_SIZE - offset);
+            System.arraycopy(values, off, current, offset, run);
+            size += run;
+            off += run;
+            len -= run;
+
+        }
+    }
+
+    // Method will keep at most maxRolls rolls (rounded up to whole chunks) in memory, spilling older ones. 0 keeps every roll in memory.
+    // The spill may be null to keep using the one already given. A new spill is given every chunk already spilled to the old one.
+    public void setRetention(int maxRolls, Spill spill) {
+        if (maxRolls < 0 || (maxRolls > 0 && spill == null && this.spill == null)) {
+            throw new IllegalArgumentException("Keeping " + maxRolls + " rolls in memory needs somewhere to spill the rest");
+
+        }
+
+        // One more chunk than needed, for the chunk being filled
+        maxChunks = maxRolls == 0 ? Integer.MAX_VALUE : (int) (((long) maxRolls + CHUNK_SIZE - 1) / CHUNK_SIZE) + 1;
+
+        if (spill != null && spill != this.spill) {
+            moveSpill(spill);
+
+        }
+
+        while (sealedCount >= maxChunks) {
+            spillOldest();
+
+        }
+    }
+
+    // Method will return the roll at the given index
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        }
+
+        int chunk = index >>> CHUNK_SHIFT;
+
+        if (chunk < spilledChunks) {
+            return spill.get(chunk, index & CHUNK_MASK);
+
+        }
+
+        if (chunk - spilledChunks < sealedCount) {
+            return sealed[chunk - spilledChunks].get(index & CHUNK_MASK);
+
+        }
+
+        return current[index & CHUNK_MASK];
+    }
+
+    // Method will copy len rolls, starting at roll from, into dest starting at off
+    public void copyTo(int from, int[] dest, int off, int len) {
+        if (from < 0 || len < 0 || (long) from + len > size) {
+            throw new IndexOutOfBoundsException("Invalid range " + from + ".." + ((long) from + len) + " of " + size);
+
+        }
+
+        // copy whole runs out of each chunk instead of one value at a time
+        while (len > 0) {
+            int chunk = from >>> CHUNK_SHIFT;
+            int offset = from & CHUNK_MASK;
+            int run = Math.min(len, CHUNK_SIZE - offset);
+
+            if (chunk < spilledChunks) {
+                spill.read(chunk, offset, dest, off, run);
+
+            } else if (chunk - spilledChunks < sealedCount) {
+                sealed[chunk - spilledChunks].copyTo(offset, dest, off, run);
+
+            } else {
+                System.arraycopy(current, offset, dest, off, run);
+
+            }
+
+            from += run;
+            off += run;
+            len -= run;
+
+        }
+    }
+
+    public int size() {
+        return size;
+
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+
+    }
+
+    public RollStatistics getStatistics() {
+        return statistics;
+
+    }
+
+    // Method will remove all rolls, release the chunks, delete the spilled rolls, and reset the statistics
+    public void clear() {
+        Arrays.fill(sealed, 0, sealedCount, null);
+        sealedCount = 0;
+        current = null;
+        scratch = null;
+        size = 0;
+        statistics.reset();
+
+        if (spill != null) {
+            spill.clear();
+            spilledChunks = 0;
+
+        }
+
+    }
+
+    // Method will stream every roll, in order
+    public void forEach(IntConsumer consumer) {
+        forEachChunk((chunk, length) -> {
+            for (int i = 0; i < length; i++) {
+                consumer.accept(chunk[i]);
+
+            }
+        });
+    }
+
+    // Method will stream the chunks, in order, reading spilled chunks back and unpacking full chunks first.
+    // Visitors must not keep or modify the chunk.
+    public void forEachChunk(ChunkVisitor visitor) {
+        if (spilledChunks + sealedCount > 0) {
+            // a separate array, so a visitor reading the history (ie. get) cannot overwrite the chunk it is given
+            int[] full = new int[CHUNK_SIZE];
+
+            for (int c = 0; c < spilledChunks; c++) {
+                spill.read(c, 0, full, 0, CHUNK_SIZE);
+                visitor.visit(full, CHUNK_SIZE);
+
+            }
+
+            for (int c = 0; c < sealedCount; c++) {
+                sealed[c].copyTo(0, full, 0, CHUNK_SIZE);
+                visitor.visit(full, CHUNK_SIZE);
+
+            }
+        }
+
+        if (current != null) {
+            visitor.visit(current, size - ((spilledChunks + sealedCount) << CHUNK_SHIFT));
+
+        }
+    }
+
+    // Method will make room for the next roll: packing the full chunk being filled and reusing its array, or making the first chunk.
+    // Once maxChunks are in memory, the oldest packed chunk is spilled.
+    private void addChunk() {
+        if (current == null) {
+            current = new int[CHUNK_SIZE];
+            return;
+
+        }
+
+        if (sealedCount == sealed.length) {
+            sealed = Arrays.copyOf(sealed, sealedCount * 2);
+
+        }
+
+        sealed[sealedCount++] = PackedChunk.pack(current, CHUNK_SIZE);
+
+        if (sealedCount >= maxChunks) {
+            spillOldest();
+
+        }
+    }
+
+    // Method will copy every spilled chunk from the current spill to the new one, then use the new one
+    private void moveSpill(Spill to) {
+        if (spilledChunks > 0) {
+            int[] chunk = new int[CHUNK_SIZE];
+
+            for (int c = 0; c < spilledChunks; c++) {
+                spill.read(c, 0, chunk, 0, CHUNK_SIZE);
+                to.write(c, chunk);
+
+            }
+        }
+
+        spill = to;
+
+    }
+
+    // Method will write the oldest packed chunk to the spill, and move every other packed chunk down one place
+    private void spillOldest() {
+        if (scratch == null) {
+            scratch = new int[CHUNK_SIZE];
+
+        }
+
+        sealed[0].copyTo(0, scratch, 0, CHUNK_SIZE);
+        spill.write(spilledChunks, scratch);
+        System.arraycopy(sealed, 1, sealed, 0, sealedCount - 1);
+        sealed[--sealedCount] = null;
+        spilledChunks++;
+
+    }
+}
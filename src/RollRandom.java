@@ -0,0 +1,23 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.util.function.IntSupplier;
+
+/* The RollRandom interface will:
+ * ------------------------
+ * - Supply the uniformly distributed 32 bit numbers that every roll is made from (getAsInt)
+ * - Hand out new generators for other threads (split), so a batch rolled across every core never shares one generator
+ *
+ * A RollRandom is used by one thread at a time. Generators made from a seed split the same way every time, so a seeded session can be replayed.
+ *
+ * Methods:
+ * ------------------------
+ * - getAsInt: returns the next uniformly distributed 32 bit number.
+ * - split: returns a new generator, independent of this one, for use by another thread.
+ */
+
+public interface RollRandom extends IntSupplier {
+    RollRandom split();
+
+}
@@ -0,0 +1,62 @@
+// =================================
+// Dice Program
+// =================================
+
+/* The RollResult class will:
+ * ------------------------
+ * - Hold the values of one batch of rolls along with the batch's summary (lowest, highest, sum, and so on)
+ *
+ * Methods:
+ * ------------------------
+ * - getValues: returns the rolled values, in the order they were rolled.
+ * - getCount: returns the number of rolled values.
+ * - getLast: returns the last rolled value (the one shown in the "Result" field).
+ * - getStatistics: returns the summary of the batch.
+ * - getLowest / getHighest / getSum: returns parts of the summary of the batch.
+ */
+
+public class RollResult {
+    private final int[] values;
+    private final RollStatistics statistics;
+
+    public RollResult(int[] values, RollStatistics statistics) {
+        this.values = values;
+        this.statistics = statistics;
+
+    }
+
+    public int[] getValues() {
+        return values;
+
+    }
+
+    public int getCount() {
+        return values.length;
+
+    }
+
+    public int getLast() {
+        return values[values.length - 1];
+
+    }
+
+    public RollStatistics getStatistics() {
+        return statistics;
+
+    }
+
+    public int getLowest() {
+        return statistics.getLowest();
+
+    }
+
+    public int getHighest() {
+        return statistics.getHighest();
+
+    }
+
+    public long getSum() {
+        return statistics.getSum();
+
+    }
+}
@@ -0,0 +1,175 @@
+// =================================
+// Dice Program
+// =================================
+
+/* The RollSpec class will:
+ * ------------------------
+ * - Hold the options of a roll (range, ignore even, ignore odd, and number of dice) as one immutable, validated snapshot
+ * - Work out the faces that can be rolled once, so rolling never has to
+ *
+ * Taking one snapshot per roll means a roll in the background (or across several cores) never sees options half way through being changed.
+ *
+ * Methods:
+ * ------------------------
+ * - of: checks the options and returns a new RollSpec, throws an IllegalArgumentException if they cannot be rolled.
+ * - countValidFaces: returns how many values can be rolled with the given options, 0 if none can.
+ * - getMin, getMax, isIgnoreEven, isIgnoreOdd, getDice: return the options.
+ * - getFirstFace, getStep, getFaces: return the faces that can be rolled (getFirstFace, getFirstFace + getStep, ... getFaces values in all).
+ */
+
+public final class RollSpec {
+    private final int min;
+    private final int max;
+    private final boolean ignoreEven;
+    private final boolean ignoreOdd;
+    private final int dice;
+
+    // Worked out from the options when the RollSpec is made
+    private final long firstFace;
+    private final long step;
+    private final long faces;
+
+    private RollSpec(int min, int max, boolean ignoreEven, boolean ignoreOdd, int dice) {
+        this.min = min;
+        this.max = max;
+        this.ignoreEven = ignoreEven;
+        this.ignoreOdd = ignoreOdd;
+        this.dice = dice;
+        this.firstFace = firstValidFace(min, ignoreEven, ignoreOdd);
+        this.step = ignoreEven || ignoreOdd ? 2 : 1;
+        this.faces = countValidFaces(min, max, ignoreEven, ignoreOdd);
+
+    }
+
+    // Method will check the options and return a new RollSpec
+    public static RollSpec of(int min, int max, boolean ignoreEven, boolean ignoreOdd, int dice) {
+        if (dice < 1) {
+            throw new IllegalArgumentException("At least one die must be rolled!");
+
+        }
+
+        // Min value cannot be larger than max value
+        if (min > max) {
+            throw new IllegalArgumentException("Min value is greater than max value!");
+
+        }
+
+        if (ignoreEven && ignoreOdd) {
+            throw new IllegalArgumentException("Even and odd numbers cannot both be ignored!");
+
+        }
+
+        // There must be at least one value of the right kind (ie. an even number when ignoring odd numbers)
+        if (countValidFaces(min, max, ignoreEven, ignoreOdd) == 0) {
+            throw new IllegalArgumentException("There are no " + (ignoreOdd ? "even" : "odd") + " numbers between the min value and max value!");
+
+        }
+
+        return new RollSpec(min, max, ignoreEven, ignoreOdd, dice);
+    }
+
+    // Method will return the smallest value at or above min that can be rolled
+    static long firstValidFace(int min, boolean ignoreEven, boolean ignoreOdd) {
+        // (min & 1) is 1 for odd numbers, including negative ones
+        if ((ignoreOdd && (min & 1) == 1) || (ignoreEven && (min & 1) == 0)) {
+            return (long) min + 1;
+
+        }
+
+        return min;
+    }
+
+    // Method will return how many values between min and max (inclusive) can be rolled, 0 if none can
+    public static long countValidFaces(int min, int max, boolean ignoreEven, boolean ignoreOdd) {
+        if (min > max) {
+            return 0;
+
+        }
+
+        if (!ignoreEven && !ignoreOdd) {
+            return (long) max - min + 1;
+
+        }
+
+        long first = firstValidFace(min, ignoreEven, ignoreOdd);
+
+        if (first > max) {
+            return 0;
+
+        }
+
+        return ((long) max - first) / 2 + 1;
+    }
+
+    public int getMin() {
+        return min;
+
+    }
+
+    public int getMax() {
+        return max;
+
+    }
+
+    public boolean isIgnoreEven() {
+        return ignoreEven;
+
+    }
+
+    public boolean isIgnoreOdd() {
+        return ignoreOdd;
+
+    }
+
+    public int getDice() {
+        return dice;
+
+    }
+
+    public long getFirstFace() {
+        return firstFace;
+
+    }
+
+    public long getStep() {
+        return step;
+
+    }
+
+    public long getFaces() {
+        return faces;
+
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+
+        }
+
+        if (!(other instanceof RollSpec)) {
+            return false;
+
+        }
+
+        RollSpec spec = (RollSpec) other;
+        return min == spec.min && max == spec.max && ignoreEven == spec.ignoreEven && ignoreOdd == spec.ignoreOdd && dice == spec.dice;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = min;
+        hash = 31 * hash + max;
+        hash = 31 * hash + (ignoreEven ? 1 : 0);
+        hash = 31 * hash + (ignoreOdd ? 1 : 0);
+        hash = 31 * hash + dice;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return dice + " x [" + min + ", " + max + "]" + (ignoreEven ? " ignoring even" : "") + (ignoreOdd ? " ignoring odd" : "");
+
+    }
+}
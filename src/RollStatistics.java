@@ -0,0 +1,390 @@
+// =================================
+// Dice Program
+// =================================
+
+/* The RollStatistics class will:
+ * ------------------------
+ * - Keep a running summary of rolls (count, lowest, highest, sum, mean, variance, and, if asked to, how often each face came up)
+ * - Update in constant time per roll, so the summary never has to rescan the history
+ * - Summarize batches in a few tight passes over the array (lowest, highest and sum, then the spread, then the counts of each face)
+ *   instead of one roll at a time, which the JIT compiler unrolls and, where the CPU allows, vectorizes
+ *
+ * Methods:
+ * ------------------------
+ * - add / addAll: adds one roll or a batch of rolls to the summary.
+ * - merge: adds another summary to this one, as if its rolls had been added here (used to combine batches rolled in parallel).
+ *   Given the rolls too, faces are counted from the rolls when the other summary did not count them.
+ * - reset: empties the summary.
+ * - getCount, getLowest, getHighest, getSum, getMean, getVariance, getStandardDeviation: return the summary values.
+ * - hasFrequencies / getFrequency: return how many times a face was rolled, when tracked and the range is small enough to track.
+ * - buildSummary: returns the lowest, highest, average, and standard deviation text shown under the past results and in exports,
+ *   followed by how often each face came up (or, for more than MAX_SUMMARY_FACES faces, the most common face) when frequencies are tracked.
+ *
+ * Only long lived summaries (ie. the history's) track frequencies. A batch's summary does not, as a table of up to MAX_FREQUENCY_SPAN
+ * counts per batch would cost far more than rolling the batch.
+ */
+
+public class RollStatistics {
+    // The largest range of faces whose frequencies are tracked (about 8 MB of counts)
+    static final int MAX_FREQUENCY_SPAN = 1 << 20;
+
+    // The most faces listed one by one in the summary, so a d20 fits but a d100 does not
+    static final int MAX_SUMMARY_FACES = 20;
+
+    private long count = 0;
+    private int lowest = Integer.MAX_VALUE;
+    private int highest = Integer.MIN_VALUE;
+    private long sum = 0;
+
+    // Running mean and sum of squared differences from the mean (Welford's method)
+    private double mean = 0.0;
+    private double squaredDifferences = 0.0;
+
+    // frequencies[i] is the number of times (frequencyBase + i) was rolled, null when not tracked or once the range is too large to track
+    private final boolean tracksFrequencies;
+    private long[] frequencies;
+    private int frequencyBase = 0;
+
+    // A summary that does not count how often each face came up
+    public RollStatistics() {
+        this(false);
+
+    }
+
+    public RollStatistics(boolean tracksFrequencies) {
+        this.tracksFrequencies = tracksFrequencies;
+        this.frequencies = tracksFrequencies ? new long[0] : null;
+
+    }
+
+    // Method will add a single roll to the summary
+    public void add(int value) {
+        count++;
+        sum += value;
+
+        if (value < lowest) {
+            lowest = value;
+
+        }
+
+        if (value > highest) {
+            highest = value;
+
+        }
+
+        double difference = value - mean;
+        mean += difference / count;
+        squaredDifferences += difference * (value - mean);
+
+        if (frequencies != null) {
+            addFrequency(value, 1);
+
+        }
+    }
+
+    // Method will add len rolls from values, starting at off, to the summary
+    public void addAll(int[] values, int off, int len) {
+        if (len == 0) {
+            return;
+
+        }
+
+        int to = off + len;
+        int batchLowest = Integer.MAX_VALUE;
+        int batchHighest = Integer.MIN_VALUE;
+        long batchSum = 0;
+
+        // no branches, so the loop can be vectorized
+        for (int i = off; i < to; i++) {
+            int value = values[i];
+            batchLowest = Math.min(batchLowest, value);
+            batchHighest = Math.max(batchHighest, value);
+            batchSum += value;
+
+        }
+
+        // The batch's own squared differences from its mean, then merged as another group would be.
+        // Four running sums, as each addition would otherwise wait on the one before.
+        double batchMean = (double) batchSum / len;
+        double squared0 = 0.0;
+        double squared1 = 0.0;
+        double squared2 = 0.0;
+        double squared3 = 0.0;
+        int i = off;
+
+        for (; i + 3 < to; i += 4) {
+            double difference0 = values[i] - batchMean;
+            double difference1 = values[i + 1] - batchMean;
+            double difference2 = values[i + 2] - batchMean;
+            double difference3 = values[i + 3] - batchMean;
+            squared0 += difference0 * difference0;
+            squared1 += difference1 * difference1;
+            squared2 += difference2 * difference2;
+            squared3 += difference3 * difference3;
+
+        }
+
+        for (; i < to; i++) {
+            double difference = values[i] - batchMean;
+            squared0 += difference * difference;
+
+        }
+
+        combine(len, batchMean, (squared0 + squared1) + (squared2 + squared3));
+        sum += batchSum;
+        lowest = Math.min(lowest, batchLowest);
+        highest = Math.max(highest, batchHighest);
+
+        countFrequencies(values, off, to);
+
+    }
+
+    // Method will add the rolls summarized by other to this summary. If this summary counts faces, other must have counted them too.
+    public void merge(RollStatistics other) {
+        if (other.count == 0) {
+            return;
+
+        }
+
+        mergeSummary(other);
+        mergeFrequencies(other);
+
+    }
+
+    // Method will add len rolls from values, starting at off, whose summary is other, counting the faces from the rolls if other did not
+    public void merge(RollStatistics other, int[] values, int off, int len) {
+        if (other.count == 0) {
+            return;
+
+        }
+
+        mergeSummary(other);
+
+        if (frequencies != null && other.frequencies == null) {
+            countFrequencies(values, off, off + len);
+
+        } else {
+            mergeFrequencies(other);
+
+        }
+    }
+
+    private void mergeSummary(RollStatistics other) {
+        combine(other.count, other.mean, other.squaredDifferences);
+        sum += other.sum;
+        lowest = Math.min(lowest, other.lowest);
+        highest = Math.max(highest, other.highest);
+
+    }
+
+    // Method will count each roll's face, growing the table once for the whole batch so counting is a single indexed add per roll.
+    // lowest and highest must already include the rolls.
+    private void countFrequencies(int[] values, int from, int to) {
+        if (frequencies != null && coverFrequencies()) {
+            long[] counts = frequencies;
+            int base = frequencyBase;
+
+            for (int i = from; i < to; i++) {
+                counts[values[i] - base]++;
+
+            }
+        }
+    }
+
+    // Method will add the face counts of other, faces are no longer known if other did not count them
+    private void mergeFrequencies(RollStatistics other) {
+        if (frequencies != null && other.frequencies == null) {
+            frequencies = null;
+
+        } else if (frequencies != null) {
+            for (int i = 0; i < other.frequencies.length && frequencies != null; i++) {
+                if (other.frequencies[i] > 0) {
+                    addFrequency(other.frequencyBase + i, other.frequencies[i]);
+
+                }
+            }
+        }
+    }
+
+    // Method will add a group of rolls, given its count, mean and squared differences from that mean, to the count, mean and variance (Chan's method)
+    private void combine(long otherCount, double otherMean, double otherSquaredDifferences) {
+        long combinedCount = count + otherCount;
+        double difference = otherMean - mean;
+        mean += difference * otherCount / combinedCount;
+        squaredDifferences += otherSquaredDifferences + difference * difference * ((double) count * otherCount / combinedCount);
+        count = combinedCount;
+
+    }
+
+    // Method will empty the summary
+    public void reset() {
+        count = 0;
+        lowest = Integer.MAX_VALUE;
+        highest = Integer.MIN_VALUE;
+        sum = 0;
+        mean = 0.0;
+        squaredDifferences = 0.0;
+        frequencies = tracksFrequencies ? new long[0] : null;
+        frequencyBase = 0;
+
+    }
+
+    public long getCount() {
+        return count;
+
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+
+    }
+
+    public int getLowest() {
+        return lowest;
+
+    }
+
+    public int getHighest() {
+        return highest;
+
+    }
+
+    public long getSum() {
+        return sum;
+
+    }
+
+    public double getMean() {
+        return mean;
+
+    }
+
+    // Population variance of the rolls, 0 when there are fewer than two rolls
+    public double getVariance() {
+        if (count < 2) {
+            return 0.0;
+
+        }
+
+        return squaredDifferences / count;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+
+    }
+
+    // Returns false when frequencies are not tracked, or the rolls have covered more than MAX_FREQUENCY_SPAN faces
+    public boolean hasFrequencies() {
+        return frequencies != null;
+
+    }
+
+    // Method will return how many times the face was rolled
+    public long getFrequency(int face) {
+        if (frequencies == null) {
+            throw new IllegalStateException(tracksFrequencies ? "Frequencies are not tracked for ranges larger than " + MAX_FREQUENCY_SPAN + " faces!" : "Frequencies are not tracked by this summary!");
+
+        }
+
+        long index = (long) face - frequencyBase;
+
+        if (index < 0 || index >= frequencies.length) {
+            return 0;
+
+        }
+
+        return frequencies[(int) index];
+    }
+
+    // Method will build the summary shown under the past results
+    public static String buildSummary(RollStatistics pastStats) {
+        StringBuilder summary = new StringBuilder()
+                .append("Lowest Value: ").append(pastStats.getLowest()).append("\n")
+                .append("Highest Value: ").append(pastStats.getHighest()).append("\n")
+                .append("Average: ").append(String.format("%.3f", pastStats.getMean())).append("\n")
+                .append("Standard Deviation: ").append(String.format("%.3f", pastStats.getStandardDeviation())).append("\n");
+
+        if (pastStats.hasFrequencies() && !pastStats.isEmpty()) {
+            appendFrequencies(summary, pastStats);
+
+        }
+
+        return summary.toString();
+    }
+
+    // Method will add how often each face came up to the summary, or only the most common face when there are too many to list
+    private static void appendFrequencies(StringBuilder summary, RollStatistics pastStats) {
+        int lowest = pastStats.getLowest();
+        int highest = pastStats.getHighest();
+
+        if ((long) highest - lowest < MAX_SUMMARY_FACES) {
+            summary.append("Times Rolled:\n");
+
+            for (long face = lowest; face <= highest; face++) {
+                long times = pastStats.getFrequency((int) face);
+                summary.append("    ").append(face).append(": ").append(times)
+                        .append(String.format(" (%.1f%%)", 100.0 * times / pastStats.getCount())).append("\n");
+
+            }
+
+            return;
+        }
+
+        // the first of the most common faces, if several came up equally often
+        long mostCommon = lowest;
+
+        for (long face = lowest; face <= highest; face++) {
+            if (pastStats.getFrequency((int) face) > pastStats.getFrequency((int) mostCommon)) {
+                mostCommon = face;
+
+            }
+        }
+
+        long times = pastStats.getFrequency((int) mostCommon);
+        summary.append("Most Common Value: ").append(mostCommon).append(" (rolled ").append(times)
+                .append(String.format(" times, %.1f%%)", 100.0 * times / pastStats.getCount())).append("\n");
+
+    }
+
+    // Method will count the roll times times, growing the frequency table to cover it if need be. lowest and highest must already include value.
+    private void addFrequency(int value, long times) {
+        long index = (long) value - frequencyBase;
+
+        if ((index < 0 || index >= frequencies.length) && !coverFrequencies()) {
+            return;
+
+        }
+
+        frequencies[value - frequencyBase] += times;
+
+    }
+
+    // Method will grow the frequency table to cover lowest..highest, returning false (and no longer tracking frequencies) if that is too many faces
+    private boolean coverFrequencies() {
+        if ((long) frequencyBase + frequencies.length - 1 >= highest && frequencyBase <= lowest && frequencies.length > 0) {
+            return true;
+
+        }
+
+        long span = (long) highest - lowest + 1;
+
+        if (span > MAX_FREQUENCY_SPAN) {
+            frequencies = null;
+            return false;
+
+        }
+
+        long[] grown = new long[(int) span];
+
+        if (frequencies.length > 0) {
+            System.arraycopy(frequencies, 0, grown, frequencyBase - lowest, frequencies.length);
+
+        }
+
+        frequencies = grown;
+        frequencyBase = lowest;
+
+        return true;
+    }
+}
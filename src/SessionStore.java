@@ -0,0 +1,250 @@
+// =================================
+// Dice Program
+// =================================
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* The SessionStore class will:
+ * ------------------------
+ * - Keep every roll of the session in an append only, memory mapped file, so the history survives the program closing or crashing
+ * - Reload the rolls straight into a roll history at start up, without reading any text
+ * - Stand in as the history's spill while it is open: the spilled chunks are already saved here, so they are read back from the mapping
+ *   rather than kept a second time on disk
+ *
+ * The file is a 16 byte header ("DSES", the version, and the number of saved rolls) followed by every roll as a little endian int32.
+ * The number of saved rolls is only updated after the rolls themselves have been written, so a crash never leaves a partly saved roll behind.
+ * The file is locked while it is open, so a second copy of the program cannot write over the rolls of the first (see LockedException).
+ *
+ * Methods:
+ * ------------------------
+ * - open: opens (or creates) and locks the session file, refusing files that are damaged or too large to map.
+ * - load: adds every saved roll to a roll history.
+ * - append: saves a batch of rolls.
+ * - write: checks that a spilled chunk has already been saved.
+ * - get / read: return one roll / copy a run of rolls from a spilled chunk.
+ * - clear: removes all saved rolls.
+ * - size: returns the number of saved rolls.
+ * - close: flushes the file to disk and trims it to the saved rolls.
+ */
+
+public class SessionStore implements AutoCloseable, RollHistory.Spill {
+    static final int SESSION_MAGIC = 0x53455344;
+    static final int SESSION_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int COUNT_POSITION = 8;
+
+    // The mapping starts at 1 MB and doubles whenever it is full, up to the largest buffer Java can map
+    static final long INITIAL_CAPACITY = 1 << 20;
+    static final long MAX_CAPACITY = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private MappedByteBuffer mapped;
+    private int size;
+
+    // Thrown by open when another copy of the program has the session file open
+    public static class LockedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        LockedException(String message) {
+            super(message);
+
+        }
+    }
+
+    private SessionStore(FileChannel channel) {
+        this.channel = channel;
+
+    }
+
+    // Method will open the session file, creating it (and its directory) if it does not exist yet
+    public static SessionStore open(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SessionStore store = new SessionStore(channel);
+
+        try {
+            // the lock is held until the channel is closed
+            FileLock lock;
+
+            try {
+                lock = channel.tryLock();
+
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+
+            }
+
+            if (lock == null) {
+                throw new LockedException(file + " is already open in another copy of the program!");
+
+            }
+
+            // a file larger than the largest mapping can only be damaged, or not a session file at all
+            long fileSize = channel.size();
+
+            if (fileSize > MAX_CAPACITY) {
+                throw new IOException(file + " is " + fileSize + " bytes, larger than a session file can be (" + MAX_CAPACITY + " bytes)!");
+
+            }
+
+            store.map(Math.max(INITIAL_CAPACITY, fileSize));
+
+            // a new (or empty) file gets a fresh header
+            if (fileSize < HEADER_SIZE) {
+                store.mapped.putInt(0, SESSION_MAGIC);
+                store.mapped.putInt(4, SESSION_VERSION);
+                store.mapped.putLong(COUNT_POSITION, 0);
+
+            } else if (store.mapped.getInt(0) != SESSION_MAGIC || store.mapped.getInt(4) != SESSION_VERSION) {
+                throw new IOException(file + " is not a dice session file!");
+
+            }
+
+            long savedRolls = store.mapped.getLong(COUNT_POSITION);
+
+            // compared without multiplying, so a damaged count cannot overflow into a small one
+            if (savedRolls < 0 || savedRolls > (Math.max(fileSize, HEADER_SIZE) - HEADER_SIZE) / 4) {
+                throw new IOException(file + " is damaged, it claims " + savedRolls + " rolls in " + fileSize + " bytes!");
+
+            }
+
+            store.size = (int) savedRolls;
+            return store;
+
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+
+    }
+
+    // Method will add every saved roll to pastVals, which also rebuilds its statistics
+    public void load(RollHistory pastVals) {
+        IntBuffer rolls = rolls();
+        int[] block = new int[RollHistory.CHUNK_SIZE];
+        int remaining = size;
+
+        while (remaining > 0) {
+            int len = Math.min(block.length, remaining);
+            rolls.get(block, 0, len);
+            pastVals.appendAll(block, 0, len);
+            remaining -= len;
+
+        }
+    }
+
+    // Method will save len rolls from values, starting at off
+    public synchronized void append(int[] values, int off, int len) throws IOException {
+        long end = HEADER_SIZE + ((long) size + len) * 4;
+
+        if (end > mapped.capacity()) {
+            if (end > MAX_CAPACITY) {
+                throw new IOException("The session file is full!");
+
+            }
+
+            map(Math.min(MAX_CAPACITY, Math.max(end, (long) mapped.capacity() * 2)));
+
+        }
+
+        // write the rolls first, then the new count
+        IntBuffer rolls = rolls();
+        rolls.position(size);
+        rolls.put(values, off, len);
+        size += len;
+        mapped.putLong(COUNT_POSITION, size);
+
+    }
+
+    // Method will check that the rolls of a spilled chunk are already saved, as every roll is saved before it is added to the history
+    @Override
+    public synchronized void write(int segment, int[] chunk) {
+        if ((long) (segment + 1) * RollHistory.CHUNK_SIZE > size) {
+            throw new IllegalStateException("Segment " + segment + " has not been saved to the session yet");
+
+        }
+    }
+
+    // Method will return one roll of a spilled chunk
+    @Override
+    public synchronized int get(int segment, int offset) {
+        return mapped.getInt(position(segment, offset));
+
+    }
+
+    // Method will copy len rolls of a spilled chunk, starting at offset, into dest starting at off
+    @Override
+    public synchronized void read(int segment, int offset, int[] dest, int off, int len) {
+        int position = position(segment, offset);
+
+        for (int i = 0; i < len; i++) {
+            dest[off + i] = mapped.getInt(position + i * 4);
+
+        }
+    }
+
+    // Method will remove all saved rolls
+    @Override
+    public synchronized void clear() {
+        size = 0;
+        mapped.putLong(COUNT_POSITION, 0);
+        mapped.force();
+
+    }
+
+    // Method will flush the file to disk and trim it down to the saved rolls
+    @Override
+    public synchronized void close() throws IOException {
+        mapped.force();
+        mapped = null;
+
+        try {
+            channel.truncate(HEADER_SIZE + (long) size * 4);
+
+        } catch (IOException e) {
+            // Some platforms cannot truncate a file that is still mapped, the unused space is harmless
+        }
+
+        channel.close();
+
+    }
+
+    // Method will map the first capacity bytes of the file, growing the file if need be
+    private void map(long capacity) throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+    }
+
+    // Returns where a roll of a spilled chunk is in the file
+    private int position(int segment, int offset) {
+        return HEADER_SIZE + ((segment << RollHistory.CHUNK_SHIFT) + offset) * 4;
+
+    }
+
+    // Returns a view of the saved rolls, starting at the first roll
+    private IntBuffer rolls() {
+        mapped.position(HEADER_SIZE);
+        IntBuffer rolls = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        mapped.position(0);
+        return rolls;
+    }
+}
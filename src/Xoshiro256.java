@@ -0,0 +1,78 @@
+// =================================
+// Dice Program
+// =================================
+
+/* The Xoshiro256 class will:
+ * ------------------------
+ * - Generate random numbers with xoshiro256** (Blackman and Vigna), a small and very fast generator with 256 bits of state
+ * - Fill its state from a single 64 bit seed using SplitMix64, so any seed (even 0) gives a good starting state
+ *
+ * Methods:
+ * ------------------------
+ * - nextLong: returns the next 64 bit number.
+ * - getAsInt: returns the top 32 bits of the next 64 bit number (the top bits are the strongest).
+ * - split: returns a new generator seeded from this one's next number.
+ */
+
+public final class Xoshiro256 implements RollRandom {
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    public Xoshiro256(long seed) {
+        // SplitMix64, as recommended by the authors for seeding
+        long x = seed;
+        s0 = mix(x += 0x9E3779B97F4A7C15L);
+        s1 = mix(x += 0x9E3779B97F4A7C15L);
+        s2 = mix(x += 0x9E3779B97F4A7C15L);
+        s3 = mix(x + 0x9E3779B97F4A7C15L);
+
+    }
+
+    // Starts from the given state rather than a seed, so the output can be compared with the authors' reference code. It must not be all zero.
+    Xoshiro256(long s0, long s1, long s2, long s3) {
+        if ((s0 | s1 | s2 | s3) == 0) {
+            throw new IllegalArgumentException("The state of xoshiro256** must not be all zero");
+
+        }
+
+        this.s0 = s0;
+        this.s1 = s1;
+        this.s2 = s2;
+        this.s3 = s3;
+
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long nextLong() {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+
+        return result;
+    }
+
+    @Override
+    public int getAsInt() {
+        return (int) (nextLong() >>> 32);
+
+    }
+
+    @Override
+    public RollRandom split() {
+        return new Xoshiro256(nextLong());
+
+    }
+}